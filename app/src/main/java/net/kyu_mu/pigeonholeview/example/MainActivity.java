@@ -11,15 +11,22 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import net.kyu_mu.pigeonholeview.CellImageLoader;
 import net.kyu_mu.pigeonholeview.PigeonholeView;
 
 import java.util.Iterator;
+import java.util.List;
 
 
 public class MainActivity extends AppCompatActivity implements PigeonholeView.PigeonholeViewListener<MyData>, SelectActionDialogFragment.SelectActionDialogFragmentListener {
     public static final String TAG = MainActivity.class.getSimpleName();
 
+    // Payloads for PigeonholeView.notifyObjectChanged()
+    private static final Object PAYLOAD_NAME = new Object();
+    private static final Object PAYLOAD_IMAGE = new Object();
+
     private PigeonholeView<MyData> pigeonholeView;
+    private CellImageLoader imageLoader;
     private MyDataList myDataList;
     private MyData editingMyData;
     private boolean isEditable;
@@ -56,7 +63,10 @@ public class MainActivity extends AppCompatActivity implements PigeonholeView.Pi
 
         pigeonholeView = findViewById(R.id.example_pigeonhole_view);
 
-        PigeonholeView.DataProvider<MyData> provider = new PigeonholeView.DataProvider<MyData>() {
+        imageLoader = new CellImageLoader(this);
+        pigeonholeView.setImageLoader(imageLoader);
+
+        PigeonholeView.DataProvider<MyData> provider = new PigeonholeView.PartialBindDataProvider<MyData>() {
             @Override
             public int getViewPosition(MyData item) {
                 return item.getViewPosition();
@@ -74,12 +84,25 @@ public class MainActivity extends AppCompatActivity implements PigeonholeView.Pi
                     existingView = inflater.inflate(R.layout.list_item, pigeonholeView, false);
                 }
                 ImageView imageView = (ImageView) existingView.findViewById(R.id.item_image);
-                imageView.setImageResource(item.getImageResourceId());
+                imageLoader.load(imageView, item.getImageResourceId());
                 TextView nameTextView = (TextView) existingView.findViewById(R.id.item_name);
                 nameTextView.setText(item.getName());
                 return existingView;
             }
 
+            @Override
+            public void bindPartial(View existingView, MyData item, List<Object> payloads) {
+                for (Object payload : payloads) {
+                    if (payload == PAYLOAD_NAME) {
+                        TextView nameTextView = (TextView) existingView.findViewById(R.id.item_name);
+                        nameTextView.setText(item.getName());
+                    } else if (payload == PAYLOAD_IMAGE) {
+                        ImageView imageView = (ImageView) existingView.findViewById(R.id.item_image);
+                        imageLoader.load(imageView, item.getImageResourceId());
+                    }
+                }
+            }
+
             @Override
             public Iterator<MyData> iterator() {
                 return myDataList.iterator();
@@ -99,6 +122,12 @@ public class MainActivity extends AppCompatActivity implements PigeonholeView.Pi
         updateEditMode();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        imageLoader.shutdown();
+    }
+
     private void updateEditMode() {
         pigeonholeView.setEditable(isEditable);
     }
@@ -199,7 +228,10 @@ public class MainActivity extends AppCompatActivity implements PigeonholeView.Pi
         if (editingMyData != null) {
             editingMyData.setName("<Edited>");
             editingMyData.setImageResourceId(android.R.drawable.ic_menu_edit);
-            pigeonholeView.updateEditingObject();
+            // Only the name and the image are updated via bindPartial().
+            // Payloads queued for the cell are merged into one bind.
+            pigeonholeView.notifyObjectChanged(editingMyData, PAYLOAD_IMAGE);
+            pigeonholeView.updateEditingObject(PAYLOAD_NAME);
         }
     }
 
@@ -0,0 +1,140 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests for the per-cell records of a PigeonholeView with 10k cells: the
+ * heap they retain, and the dispatch of clicks through the shared listener.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class CellDataHeapTest extends InstrumentationTestCase {
+    public static final String TAG = CellDataHeapTest.class.getSimpleName();
+
+    private static final int ITEM_COUNT = 10000;
+    private static final int NUM_COLUMNS = 4;
+    private static final int NUM_ROWS = 5;
+    private static final float CELL_WIDTH = 112; // 4 columns in VIEW_WIDTH
+    private static final float CELL_HEIGHT = 150; // 5 rows in VIEW_HEIGHT
+    private static final int VIEW_WIDTH = 480;
+    private static final int VIEW_HEIGHT = 800;
+    // CellData with packed spans is 32 bytes, and cellMap adds a key and a reference for each cell
+    private static final long MAX_BYTES_PER_CELL = 96;
+
+    private List<Integer> items;
+    private int[] positions;
+    private PigeonholeView<Integer> view;
+    private Integer clickedItem;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        items = new ArrayList<>(ITEM_COUNT);
+        positions = new int[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(i);
+            positions[i] = i;
+        }
+    }
+
+    public void testRetainedHeapPerCell() {
+        final long[] retainedBytes = new long[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = getInstrumentation().getTargetContext();
+                createView(context); // load the classes and warm up before measuring
+                view = null;
+                long before = usedHeap();
+                view = createView(context);
+                retainedBytes[0] = usedHeap() - before;
+            }
+        });
+        long bytesPerCell = retainedBytes[0] / ITEM_COUNT;
+        Log.i(TAG, ITEM_COUNT + " cells: " + retainedBytes[0] + " bytes, " + bytesPerCell + " bytes per cell");
+        assertTrue(bytesPerCell + " bytes per cell", bytesPerCell <= MAX_BYTES_PER_CELL);
+    }
+
+    public void testClickIsDispatchedToCellOfView() {
+        final List<String> mismatches = new ArrayList<>();
+        final int[] clickCount = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view = createView(getInstrumentation().getTargetContext());
+                view.setOnCellClickListener(new PigeonholeView.OnCellClickListener<Integer>() {
+                    @Override
+                    public void onClick(PigeonholeView.CellData<Integer> cellData) {
+                        clickedItem = cellData.getObject();
+                    }
+                });
+                for (int i = 0, l = view.getChildCount(); i < l; i++) {
+                    View child = view.getChildAt(i);
+                    if (!(child instanceof TextView) || child.getVisibility() != View.VISIBLE) {
+                        continue;
+                    }
+                    // Move the view away from its slot as an animation does
+                    child.offsetLeftAndRight(VIEW_WIDTH);
+                    clickedItem = null;
+                    child.performClick();
+                    clickCount[0]++;
+                    String label = ((TextView) child).getText().toString();
+                    if (clickedItem == null || !label.equals(String.valueOf(clickedItem))) {
+                        mismatches.add(label + " -> " + clickedItem);
+                    }
+                }
+            }
+        });
+        assertEquals(NUM_COLUMNS * NUM_ROWS, clickCount[0]);
+        assertTrue(mismatches.toString(), mismatches.isEmpty());
+    }
+
+    private PigeonholeView<Integer> createView(final Context context) {
+        PigeonholeView<Integer> pigeonholeView = new PigeonholeView<>(context);
+        pigeonholeView.setCellSize(CELL_WIDTH, CELL_HEIGHT);
+        pigeonholeView.setDataProvider(new PigeonholeView.DataProvider<Integer>() {
+            @Override
+            public int getViewPosition(Integer item) {
+                return positions[item];
+            }
+
+            @Override
+            public void setViewPosition(Integer item, int viewPosition) {
+                positions[item] = viewPosition;
+            }
+
+            @Override
+            public View getView(View existingView, Integer item) {
+                TextView textView = existingView instanceof TextView ? (TextView) existingView : new TextView(context);
+                textView.setText(String.valueOf(item));
+                return textView;
+            }
+
+            @Override
+            public Iterator<Integer> iterator() {
+                return items.iterator();
+            }
+        });
+        pigeonholeView.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY));
+        pigeonholeView.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        return pigeonholeView;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
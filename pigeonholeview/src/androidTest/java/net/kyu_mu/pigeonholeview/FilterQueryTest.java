@@ -0,0 +1,148 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests for setFilterQuery() on a PigeonholeView with 10k cells. Each
+ * keystroke of a query must be handled within a frame.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class FilterQueryTest extends InstrumentationTestCase {
+    public static final String TAG = FilterQueryTest.class.getSimpleName();
+
+    private static final int ITEM_COUNT = 10000;
+    private static final float CELL_WIDTH = 112; // 4 columns in VIEW_WIDTH
+    private static final float CELL_HEIGHT = 150; // 5 rows in VIEW_HEIGHT
+    private static final int VIEW_WIDTH = 480;
+    private static final int VIEW_HEIGHT = 800;
+    private static final long FRAME_NANOS = 16000000;
+
+    private static class Item {
+        private String label;
+        private int position;
+
+        Item(String label, int position) {
+            this.label = label;
+            this.position = position;
+        }
+    }
+
+    private List<Item> items;
+    private PigeonholeView<Item> view;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        items = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(new Item("Item " + i, i));
+        }
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view = createView(getInstrumentation().getTargetContext());
+            }
+        });
+    }
+
+    public void testKeystrokeWithinFrame() {
+        final String query = "item 12";
+        final long[] keystrokeNanos = new long[query.length()];
+        final int[] matchCount = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Build the index as the first keystroke of a session does
+                view.setFilterQuery(query.substring(0, 1));
+                view.setFilterQuery(null);
+                for (int i = 0; i < query.length(); i++) {
+                    long start = System.nanoTime();
+                    view.setFilterQuery(query.substring(0, i + 1));
+                    keystrokeNanos[i] = System.nanoTime() - start;
+                }
+                matchCount[0] = view.getFilterMatchCount();
+            }
+        });
+
+        int expectedCount = 0;
+        for (Item item : items) {
+            if (LabelIndex.normalize(item.label).contains(query)) {
+                expectedCount++;
+            }
+        }
+        assertEquals(expectedCount, matchCount[0]);
+        for (int i = 0; i < keystrokeNanos.length; i++) {
+            Log.i(TAG, "\"" + query.substring(0, i + 1) + "\": " + (keystrokeNanos[i] / 1000) + "us");
+            assertTrue("Keystroke " + i + " took " + keystrokeNanos[i] + " ns", keystrokeNanos[i] < FRAME_NANOS);
+        }
+    }
+
+    public void testObjectChangedInPlaceUpdatesMatchCount() {
+        final int[] matchCounts = new int[3];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view.setFilterQuery("zebra");
+                matchCounts[0] = view.getFilterMatchCount();
+
+                Item item = items.get(5);
+                item.label = "Zebra";
+                view.notifyObjectChanged(item);
+                matchCounts[1] = view.getFilterMatchCount();
+
+                item.label = "Item 5";
+                view.notifyObjectChanged(item);
+                matchCounts[2] = view.getFilterMatchCount();
+            }
+        });
+        assertEquals(0, matchCounts[0]);
+        assertEquals(1, matchCounts[1]);
+        assertEquals(0, matchCounts[2]);
+    }
+
+    private PigeonholeView<Item> createView(final Context context) {
+        PigeonholeView<Item> pigeonholeView = new PigeonholeView<>(context);
+        pigeonholeView.setCellSize(CELL_WIDTH, CELL_HEIGHT);
+        pigeonholeView.setDataProvider(new PigeonholeView.LabelDataProvider<Item>() {
+            @Override
+            public CharSequence getLabel(Item item) {
+                return item.label;
+            }
+
+            @Override
+            public int getViewPosition(Item item) {
+                return item.position;
+            }
+
+            @Override
+            public void setViewPosition(Item item, int viewPosition) {
+                item.position = viewPosition;
+            }
+
+            @Override
+            public View getView(View existingView, Item item) {
+                TextView textView = existingView instanceof TextView ? (TextView) existingView : new TextView(context);
+                textView.setText(item.label);
+                return textView;
+            }
+
+            @Override
+            public Iterator<Item> iterator() {
+                return items.iterator();
+            }
+        });
+        pigeonholeView.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY));
+        pigeonholeView.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        return pigeonholeView;
+    }
+}
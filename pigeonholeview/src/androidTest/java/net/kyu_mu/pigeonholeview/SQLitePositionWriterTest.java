@@ -0,0 +1,99 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Tests for SQLitePositionWriter. The per-move cost is what the UI thread
+ * pays for each moved cell in moveCell() and endDrag().
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class SQLitePositionWriterTest extends AndroidTestCase {
+    public static final String TAG = SQLitePositionWriterTest.class.getSimpleName();
+
+    private static final int ITEM_COUNT = 64;
+    private static final int WARM_UP_WRITES = 10000;
+    private static final int MEASURED_WRITES = 100000;
+
+    private SQLiteDatabase database;
+    private SQLitePositionWriter writer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE items (_id INTEGER PRIMARY KEY, position INTEGER)");
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            database.execSQL("INSERT INTO items (_id, position) VALUES (" + i + ", " + i + ")");
+        }
+        writer = new SQLitePositionWriter(database, "items", "_id", "position");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        writer.flush();
+        database.close();
+        super.tearDown();
+    }
+
+    public void testWriteCostPerMove() {
+        for (int i = 0; i < WARM_UP_WRITES; i++) {
+            writer.write(i % ITEM_COUNT, i);
+        }
+        writer.flush();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_WRITES; i++) {
+            writer.write(i % ITEM_COUNT, i);
+        }
+        long nanosPerWrite = (System.nanoTime() - start) / MEASURED_WRITES;
+        Log.i(TAG, "write(): " + nanosPerWrite + " ns per move");
+        assertTrue("write() took " + nanosPerWrite + " ns", nanosPerWrite < 1000);
+    }
+
+    public void testCoalescesRepeatedWrites() throws InterruptedException {
+        // Keep the background thread busy so that the next writes stay queued.
+        // An in-memory database has one connection, which this transaction holds.
+        database.beginTransaction();
+        try {
+            writer.write(ITEM_COUNT - 1, ITEM_COUNT - 1);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (writer.getPendingCount() > 0) {
+                assertTrue("The queued position was not taken", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            writer.write(1, 10);
+            writer.write(2, 20);
+            writer.write(1, 30);
+            assertEquals(2, writer.getPendingCount());
+        } finally {
+            database.endTransaction();
+        }
+        writer.flush();
+        assertEquals(30, readPosition(1));
+        assertEquals(20, readPosition(2));
+        assertEquals(3, readPosition(3));
+    }
+
+    public void testWritesAfterClose() {
+        writer.write(1, 10);
+        writer.close();
+        writer.write(2, 20);
+        writer.flush();
+        assertEquals(10, readPosition(1));
+        assertEquals(20, readPosition(2));
+    }
+
+    private int readPosition(long id) {
+        Cursor cursor = database.rawQuery("SELECT position FROM items WHERE _id = " + id, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
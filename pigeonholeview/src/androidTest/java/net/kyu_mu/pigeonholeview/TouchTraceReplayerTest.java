@@ -0,0 +1,130 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the drag trace in the test assets against a PigeonholeView with
+ * a fixed set of items. The trace was recorded on a 480x800 view: the cell
+ * at the top left is dragged to the bottom right in 16 ms steps and held
+ * there before it is dropped. With 112x150 cells the view has a 4x5 grid,
+ * so the first item ends up at the last position.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class TouchTraceReplayerTest extends InstrumentationTestCase {
+    public static final String TAG = TouchTraceReplayerTest.class.getSimpleName();
+
+    private static final String TRACE_ASSET = "touch_trace_drag.bin";
+    private static final float CELL_WIDTH = 112;
+    private static final float CELL_HEIGHT = 150;
+    private static final int DROP_POSITION = 19;
+    private static final int ITEM_COUNT = 12;
+    private static final int VIEW_WIDTH = 480;
+    private static final int VIEW_HEIGHT = 800;
+
+    private PigeonholeView<Integer> view;
+    private int[] positions;
+
+    public void testReplayDragTrace() throws Exception {
+        final TouchTraceReplayer replayer = new TouchTraceReplayer(
+                getInstrumentation().getContext().getAssets().open(TRACE_ASSET));
+        assertTrue(replayer.getEventCount() > 0);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final TouchTraceReplayer.Report[] result = new TouchTraceReplayer.Report[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view = createView(getInstrumentation().getTargetContext());
+                replayer.replay(view, new TouchTraceReplayer.OnReplayFinishedListener() {
+                    @Override
+                    public void onReplayFinished(TouchTraceReplayer.Report report) {
+                        result[0] = report;
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue("Replay did not finish", latch.await(10, TimeUnit.SECONDS));
+
+        TouchTraceReplayer.Report report = result[0];
+        Log.i(TAG, TRACE_ASSET + ": " + report);
+        assertEquals(replayer.getEventCount(), report.getEventCount());
+        long totalNanos = 0;
+        int totalAllocations = 0;
+        int totalAnimations = 0;
+        for (int i = 0; i < report.getEventCount(); i++) {
+            assertTrue(report.getHandlerNanos(i) >= 0);
+            assertTrue(report.getAllocations(i) >= 0);
+            totalNanos += report.getHandlerNanos(i);
+            totalAllocations += report.getAllocations(i);
+            totalAnimations += report.getAnimations(i);
+        }
+        Log.i(TAG, "total " + (totalNanos / 1000) + "us, allocations " + totalAllocations
+                + ", animations " + totalAnimations);
+        assertTrue("Handling the trace took " + totalNanos + " ns", totalNanos > 0);
+        assertTrue("No animation was started by the drag", totalAnimations > 0);
+
+        final int[] droppedPosition = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                droppedPosition[0] = positions[0];
+            }
+        });
+        assertEquals(DROP_POSITION, droppedPosition[0]);
+    }
+
+    private PigeonholeView<Integer> createView(final Context context) {
+        final List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(i);
+        }
+        positions = new int[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            positions[i] = i;
+        }
+
+        PigeonholeView<Integer> pigeonholeView = new PigeonholeView<>(context);
+        pigeonholeView.setCellSize(CELL_WIDTH, CELL_HEIGHT);
+        pigeonholeView.setEditable(true);
+        pigeonholeView.setDragStartDelay(0);
+        pigeonholeView.setDataProvider(new PigeonholeView.DataProvider<Integer>() {
+            @Override
+            public int getViewPosition(Integer item) {
+                return positions[item];
+            }
+
+            @Override
+            public void setViewPosition(Integer item, int viewPosition) {
+                positions[item] = viewPosition;
+            }
+
+            @Override
+            public View getView(View existingView, Integer item) {
+                TextView textView = existingView instanceof TextView ? (TextView) existingView : new TextView(context);
+                textView.setText(String.valueOf(item));
+                return textView;
+            }
+
+            @Override
+            public Iterator<Integer> iterator() {
+                return items.iterator();
+            }
+        });
+        pigeonholeView.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY));
+        pigeonholeView.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        return pigeonholeView;
+    }
+}
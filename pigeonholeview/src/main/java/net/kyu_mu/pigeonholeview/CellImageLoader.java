@@ -0,0 +1,315 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads images for cells on background threads. Images are downsampled
+ * to the cell size and kept in a memory cache which is bounded in bytes.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class CellImageLoader {
+    public static final String TAG = CellImageLoader.class.getSimpleName();
+
+    private Resources resources;
+    private LruCache<String, Bitmap> cache;
+    private ExecutorService executor;
+    private Handler mainHandler;
+    private ArrayList<Request> requests = new ArrayList<>(); // accessed only on the main thread
+    private int targetWidth;
+    private int targetHeight;
+
+    private class Request implements Runnable {
+        private ImageView imageView;
+        private int resId;
+        private String path;
+        private int reqWidth;
+        private int reqHeight;
+        private String key;
+        private Future<?> future;
+        private volatile boolean isCancelled = false;
+
+        @Override
+        public void run() {
+            if (isCancelled) {
+                return;
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final Bitmap bitmap = decode(this);
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    finish(Request.this, bitmap);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates a CellImageLoader which uses up to 1/8 of the maximum heap
+     * size for the memory cache.
+     *
+     * @param context Context
+     */
+    public CellImageLoader(Context context) {
+        this(context, (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Creates a CellImageLoader.
+     *
+     * @param context       Context
+     * @param maxCacheBytes Maximum size of the memory cache in bytes
+     */
+    public CellImageLoader(Context context, int maxCacheBytes) {
+        this.resources = context.getResources();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.cache = new LruCache<String, Bitmap>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return getByteCount(bitmap);
+            }
+        };
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors()),
+                new ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, TAG + " #" + (++count));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Sets the size which images are downsampled to. PigeonholeView sets
+     * its cell size here when this loader is passed to setImageLoader().
+     *
+     * @param width  Width in pixels
+     * @param height Height in pixels
+     */
+    public void setTargetSize(int width, int height) {
+        this.targetWidth = width;
+        this.targetHeight = height;
+    }
+
+    /**
+     * Loads the drawable resource into the ImageView. Any pending load for
+     * the ImageView is cancelled. Resources which cannot be decoded as a
+     * bitmap (e.g. vector drawables) are set with setImageResource().
+     * This method must be called on the main thread.
+     *
+     * @param imageView ImageView that will show the image
+     * @param resId     Drawable resource id
+     */
+    public void load(ImageView imageView, int resId) {
+        Request request = new Request();
+        request.resId = resId;
+        request.key = "res:" + resId;
+        enqueue(imageView, request);
+    }
+
+    /**
+     * Loads the image file into the ImageView. Any pending load for
+     * the ImageView is cancelled. This method must be called on the
+     * main thread.
+     *
+     * @param imageView ImageView that will show the image
+     * @param path      Path to the image file
+     */
+    public void load(ImageView imageView, String path) {
+        Request request = new Request();
+        request.path = path;
+        request.key = "file:" + path;
+        enqueue(imageView, request);
+    }
+
+    /**
+     * Cancels the pending load for the ImageView.
+     *
+     * @param imageView ImageView
+     */
+    public void cancel(ImageView imageView) {
+        Object tag = imageView.getTag(R.id.pigeonhole_view__image_request);
+        if (tag instanceof Request) {
+            cancelRequest((Request) tag);
+        }
+    }
+
+    /**
+     * Cancels the pending loads for the view and its descendants.
+     * PigeonholeView calls this when a cell view is removed.
+     *
+     * @param view Root of the views
+     */
+    public void cancelAll(View view) {
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            Request request = requests.get(i);
+            if (isDescendant(request.imageView, view)) {
+                cancelRequest(request);
+            }
+        }
+    }
+
+    /**
+     * Removes all images from the memory cache.
+     */
+    public void clearCache() {
+        cache.evictAll();
+    }
+
+    /**
+     * Shrinks the memory cache to the given ratio of its maximum size.
+     *
+     * @param ratio From 0 (empty) to 1 (maximum size)
+     */
+    public void trimCache(float ratio) {
+        cache.trimToSize((int) (cache.maxSize() * ratio));
+    }
+
+    /**
+     * Cancels all pending loads and stops the background threads.
+     */
+    public void shutdown() {
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            cancelRequest(requests.get(i));
+        }
+        executor.shutdownNow();
+        cache.evictAll();
+    }
+
+    private void enqueue(ImageView imageView, Request request) {
+        cancel(imageView);
+
+        request.imageView = imageView;
+        request.reqWidth = targetWidth;
+        request.reqHeight = targetHeight;
+        request.key += ":" + targetWidth + "x" + targetHeight;
+
+        Bitmap bitmap = cache.get(request.key);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        imageView.setTag(R.id.pigeonhole_view__image_request, request);
+        requests.add(request);
+        request.future = executor.submit(request);
+    }
+
+    private void cancelRequest(Request request) {
+        request.isCancelled = true;
+        if (request.future != null) {
+            request.future.cancel(false);
+        }
+        requests.remove(request);
+        if (request.imageView.getTag(R.id.pigeonhole_view__image_request) == request) {
+            request.imageView.setTag(R.id.pigeonhole_view__image_request, null);
+        }
+    }
+
+    private void finish(Request request, Bitmap bitmap) {
+        if (request.isCancelled) {
+            return;
+        }
+        requests.remove(request);
+        ImageView imageView = request.imageView;
+        if (imageView.getTag(R.id.pigeonhole_view__image_request) != request) { // superseded
+            return;
+        }
+        imageView.setTag(R.id.pigeonhole_view__image_request, null);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+        } else if (request.path == null) {
+            imageView.setImageResource(request.resId);
+        }
+    }
+
+    /**
+     * Decodes the image downsampled by a power of two so that it is not
+     * smaller than the requested size. Called on a background thread.
+     *
+     * @param request The request
+     * @return Decoded bitmap, or null if the image cannot be decoded
+     */
+    private Bitmap decode(Request request) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(request, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        if (request.reqWidth > 0 && request.reqHeight > 0) {
+            while (options.outWidth / (sampleSize * 2) >= request.reqWidth
+                    && options.outHeight / (sampleSize * 2) >= request.reqHeight) {
+                sampleSize *= 2;
+            }
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        try {
+            return decode(request, options);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory while decoding " + request.key);
+            cache.evictAll();
+            return null;
+        }
+    }
+
+    private Bitmap decode(Request request, BitmapFactory.Options options) {
+        if (request.path != null) {
+            return BitmapFactory.decodeFile(request.path, options);
+        } else {
+            return BitmapFactory.decodeResource(resources, request.resId, options);
+        }
+    }
+
+    private static boolean isDescendant(View view, View root) {
+        if (view == root) {
+            return true;
+        }
+        ViewParent parent = view.getParent();
+        while (parent != null) {
+            if (parent == root) {
+                return true;
+            }
+            parent = parent.getParent();
+        }
+        return false;
+    }
+
+    private static int getByteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+            return bitmap.getByteCount();
+        } else {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Lightweight label for cells which draws a text layout built by
+ * LabelLayoutCache. Unlike TextView, it does not measure the text
+ * when it is bound or measured.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class CellLabelView extends View {
+    private Layout layout;
+
+    public CellLabelView(Context context) {
+        super(context);
+    }
+
+    public CellLabelView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Sets the text using the layout from the cache for a 1x1 cell.
+     *
+     * @param text  The label text
+     * @param cache LabelLayoutCache which holds the layout
+     */
+    public void setText(CharSequence text, LabelLayoutCache cache) {
+        setText(text, cache, 1);
+    }
+
+    /**
+     * Sets the text using the layout from the cache.
+     *
+     * @param text       The label text
+     * @param cache      LabelLayoutCache which holds the layout
+     * @param columnSpan The number of columns of the cell
+     */
+    public void setText(CharSequence text, LabelLayoutCache cache, int columnSpan) {
+        setLabelLayout(cache.getLayout(text, columnSpan));
+    }
+
+    /**
+     * Returns the text of this label.
+     *
+     * @return The text, or null if no layout is set
+     */
+    public CharSequence getText() {
+        return layout != null ? layout.getText() : null;
+    }
+
+    public Layout getLabelLayout() {
+        return layout;
+    }
+
+    /**
+     * Sets the text layout to draw.
+     *
+     * @param layout The text layout
+     */
+    public void setLabelLayout(Layout layout) {
+        if (this.layout == layout) {
+            return;
+        }
+        boolean isSizeChanged = this.layout == null || layout == null
+                || this.layout.getWidth() != layout.getWidth()
+                || this.layout.getHeight() != layout.getHeight();
+        this.layout = layout;
+        if (isSizeChanged) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int layoutWidth = layout != null ? layout.getWidth() : 0;
+        int layoutHeight = layout != null ? layout.getHeight() : 0;
+        int w = resolveSize(layoutWidth + getPaddingLeft() + getPaddingRight(), widthMeasureSpec);
+        int h = resolveSize(layoutHeight + getPaddingTop() + getPaddingBottom(), heightMeasureSpec);
+        setMeasuredDimension(w, h);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (layout == null) {
+            return;
+        }
+        canvas.save();
+        // Center the layout horizontally within the padded area
+        float left = getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight() - layout.getWidth()) / 2.0f;
+        canvas.translate(left, getPaddingTop());
+        layout.draw(canvas);
+        canvas.restore();
+    }
+}
@@ -0,0 +1,95 @@
+package net.kyu_mu.pigeonholeview;
+
+/**
+ * A change to the cells of PigeonholeView which can be posted from any
+ * thread with PigeonholeView.post(). Mutations are applied on the main
+ * thread once per frame, and redundant ones are coalesced.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class CellMutation<T> {
+    static final int TYPE_ADD = 0;
+    static final int TYPE_REMOVE = 1;
+    static final int TYPE_MOVE = 2;
+    static final int TYPE_UPDATE = 3;
+    static final int TYPE_SET_DATA_PROVIDER = 4;
+
+    final int type;
+    final T object;
+    final int position;
+    final Object payload;
+    final PigeonholeView.DataProvider<T> provider;
+
+    private CellMutation(int type, T object, int position, Object payload, PigeonholeView.DataProvider<T> provider) {
+        this.type = type;
+        this.object = object;
+        this.position = position;
+        this.payload = payload;
+        this.provider = provider;
+    }
+
+    /**
+     * Adds a cell as with PigeonholeView.addObject().
+     *
+     * @param object Object representing a cell
+     * @return The mutation
+     */
+    public static <T> CellMutation<T> add(T object) {
+        return new CellMutation<>(TYPE_ADD, object, PigeonholeView.POSITION_INVALID, null, null);
+    }
+
+    /**
+     * Removes the cell for the object.
+     *
+     * @param object Object representing a cell
+     * @return The mutation
+     */
+    public static <T> CellMutation<T> remove(T object) {
+        return new CellMutation<>(TYPE_REMOVE, object, PigeonholeView.POSITION_INVALID, null, null);
+    }
+
+    /**
+     * Moves the cell for the object. The move is skipped if the position
+     * is occupied by another cell which is not moved in the same frame.
+     *
+     * @param object   Object representing a cell
+     * @param position The new view position
+     * @return The mutation
+     */
+    public static <T> CellMutation<T> move(T object, int position) {
+        return new CellMutation<>(TYPE_MOVE, object, position, null, null);
+    }
+
+    /**
+     * Replaces the object of the cell and rebinds the whole cell view.
+     *
+     * @param object Object representing a cell
+     * @return The mutation
+     */
+    public static <T> CellMutation<T> update(T object) {
+        return new CellMutation<>(TYPE_UPDATE, object, PigeonholeView.POSITION_INVALID, null, null);
+    }
+
+    /**
+     * Replaces the object of the cell and updates a part of the cell view
+     * as with PigeonholeView.notifyObjectChanged(object, payload).
+     *
+     * @param object  Object representing a cell
+     * @param payload Payload which describes the changed part
+     * @return The mutation
+     */
+    public static <T> CellMutation<T> update(T object, Object payload) {
+        return new CellMutation<>(TYPE_UPDATE, object, PigeonholeView.POSITION_INVALID, payload, null);
+    }
+
+    /**
+     * Sets a new DataProvider. Mutations posted before this one in the same
+     * frame are discarded.
+     *
+     * @param provider The new DataProvider
+     * @return The mutation
+     */
+    public static <T> CellMutation<T> setDataProvider(PigeonholeView.DataProvider<T> provider) {
+        return new CellMutation<>(TYPE_SET_DATA_PROVIDER, null, PigeonholeView.POSITION_INVALID, null, provider);
+    }
+}
@@ -0,0 +1,299 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * DataProvider backed by a Cursor. Only the id and position columns are
+ * read when the grid is built. Item objects are created by createObject()
+ * when a cell is bound, and kept in a small LRU window of pages of rows,
+ * so large tables are not loaded into memory at once.
+ *
+ * Sort the cursor by the position column so that the visible cells are
+ * read from the same pages. Call load() and then pass this provider to
+ * PigeonholeView.setDataProvider() in the callback, so that the ids and
+ * positions are read on a background thread.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public abstract class CursorDataProvider<T> implements PigeonholeView.StableIdDataProvider<CursorDataProvider.Item<T>> {
+    public static final String TAG = CursorDataProvider.class.getSimpleName();
+
+    private static final int DEFAULT_PAGE_SIZE = 32;
+    private static final int DEFAULT_MAX_PAGES = 4;
+
+    private final String idColumn;
+    private final String positionColumn;
+    private final int pageSize;
+    private final Object cursorLock = new Object(); // the cursor is read by the main and background threads
+    private Cursor cursor;
+    private Item<T>[] items; // null until the rows are scanned
+    private LruCache<Integer, Object[]> window;
+    private ExecutorService executor;
+    private int loadGeneration = 0;
+
+    /**
+     * Called on the main thread when the rows have been scanned by load().
+     */
+    public interface OnLoadListener<T> {
+        void onLoad(CursorDataProvider<T> provider);
+    }
+
+    /**
+     * Handle for a row of the cursor. The item object is created when
+     * getObject() is called.
+     */
+    public static class Item<T> {
+        private final CursorDataProvider<T> provider;
+        private final int row;
+        private final long id;
+        private int position;
+
+        private Item(CursorDataProvider<T> provider, int row, long id, int position) {
+            this.provider = provider;
+            this.row = row;
+            this.id = id;
+            this.position = position;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the item object for this row. It is created from the
+         * cursor if it is not in the window.
+         *
+         * @return The item object, or null if the cursor has been changed
+         */
+        public T getObject() {
+            return provider.getObject(row);
+        }
+    }
+
+    /**
+     * Creates a CursorDataProvider which keeps up to 4 pages of 32 rows.
+     *
+     * @param cursor         Cursor which has the id and position columns
+     * @param idColumn       Name of the column for stable ids
+     * @param positionColumn Name of the column for view positions
+     */
+    public CursorDataProvider(Cursor cursor, String idColumn, String positionColumn) {
+        this(cursor, idColumn, positionColumn, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Creates a CursorDataProvider.
+     *
+     * @param cursor         Cursor which has the id and position columns
+     * @param idColumn       Name of the column for stable ids
+     * @param positionColumn Name of the column for view positions
+     * @param pageSize       The number of rows read at once
+     * @param maxPages       The number of pages kept in memory
+     */
+    public CursorDataProvider(Cursor cursor, String idColumn, String positionColumn, int pageSize, int maxPages) {
+        this.idColumn = idColumn;
+        this.positionColumn = positionColumn;
+        this.pageSize = pageSize;
+        this.window = new LruCache<>(maxPages);
+        changeCursor(cursor);
+    }
+
+    /**
+     * Creates the item object from the current row of the cursor.
+     *
+     * @param cursor Cursor moved to the row
+     * @return The item object
+     */
+    protected abstract T createObject(Cursor cursor);
+
+    /**
+     * Called when the position of an item has been changed by PigeonholeView.
+     * Save the position here.
+     *
+     * @param id       The id of the item
+     * @param position The new view position
+     */
+    protected void onPositionChanged(long id, int position) {
+    }
+
+    /**
+     * Replaces the cursor and closes the old one. The rows are not read
+     * here; call load() or PigeonholeView.setDataProvider() again to show
+     * the new rows.
+     *
+     * @param newCursor The new cursor
+     */
+    public void changeCursor(Cursor newCursor) {
+        synchronized (cursorLock) {
+            if (cursor != null && cursor != newCursor) {
+                cursor.close();
+            }
+            cursor = newCursor;
+        }
+        window.evictAll();
+        items = null;
+        loadGeneration++; // results of load() for the old cursor are discarded
+    }
+
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Reads the ids and positions of all rows on a background thread.
+     * Without this, they are read on the calling thread when
+     * PigeonholeView.setDataProvider() iterates this provider.
+     *
+     * @param listener Listener which is called on the main thread when the rows are ready
+     */
+    public void load(final OnLoadListener<T> listener) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        final int generation = loadGeneration;
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Item<T>[] scannedItems = scan();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != loadGeneration) {
+                            return; // the cursor has been changed
+                        }
+                        if (items == null) {
+                            items = scannedItems;
+                        }
+                        listener.onLoad(CursorDataProvider.this);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Closes the cursor and stops the background thread.
+     */
+    public void close() {
+        changeCursor(null);
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Reads the id and position of each row.
+     *
+     * @return Handles for the rows
+     */
+    @SuppressWarnings("unchecked")
+    private Item<T>[] scan() {
+        synchronized (cursorLock) {
+            int count = cursor != null ? cursor.getCount() : 0;
+            Item<T>[] scannedItems = (Item<T>[]) new Item[count];
+            if (count == 0) {
+                return scannedItems;
+            }
+            int idIndex = cursor.getColumnIndexOrThrow(idColumn);
+            int positionIndex = cursor.getColumnIndexOrThrow(positionColumn);
+            for (int row = 0; row < count && cursor.moveToPosition(row); row++) {
+                scannedItems[row] = new Item<>(this, row, cursor.getLong(idIndex), cursor.getInt(positionIndex));
+            }
+            return scannedItems;
+        }
+    }
+
+    @Override
+    public int getViewPosition(Item<T> item) {
+        return item.position;
+    }
+
+    @Override
+    public void setViewPosition(Item<T> item, int viewPosition) {
+        item.position = viewPosition;
+        onPositionChanged(item.id, viewPosition);
+    }
+
+    @Override
+    public long getItemId(Item<T> item) {
+        return item.id;
+    }
+
+    @Override
+    public Iterator<Item<T>> iterator() {
+        if (items == null) {
+            items = scan(); // load() has not finished
+        }
+        final Item<T>[] items = this.items;
+        return new Iterator<Item<T>>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < items.length;
+            }
+
+            @Override
+            public Item<T> next() {
+                if (row >= items.length) {
+                    throw new NoSuchElementException();
+                }
+                return items[row++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns the item object for the row, reading its page if needed.
+     *
+     * @param row Row index of the cursor
+     * @return The item object
+     */
+    @SuppressWarnings("unchecked")
+    private T getObject(int row) {
+        if (items == null || row >= items.length) {
+            return null; // the handle is for a cursor which has been changed
+        }
+        int pageIndex = row / pageSize;
+        Object[] page = window.get(pageIndex);
+        if (page == null) {
+            int firstRow = pageIndex * pageSize;
+            page = new Object[Math.min(pageSize, items.length - firstRow)];
+            synchronized (cursorLock) {
+                for (int i = 0; i < page.length && cursor.moveToPosition(firstRow + i); i++) {
+                    page[i] = createObject(cursor);
+                }
+            }
+            window.put(pageIndex, page);
+        }
+        return (T) page[row % pageSize];
+    }
+}
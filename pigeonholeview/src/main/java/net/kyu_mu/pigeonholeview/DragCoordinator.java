@@ -0,0 +1,155 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.graphics.Point;
+
+import java.util.ArrayList;
+
+/**
+ * Lets the user drag a cell from one PigeonholeView to another.
+ * While the pointer is over another registered view, the dragged cell view
+ * is handed over to that view and hit testing is done against its grid.
+ * On drop, the cell view and its CellData are moved to the target view
+ * without being inflated or bound again.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class DragCoordinator<T> {
+    public static final String TAG = DragCoordinator.class.getSimpleName();
+
+    private ArrayList<PigeonholeView<T>> views = new ArrayList<>();
+    private PigeonholeView<T> dragOwner; // the view which currently holds the dragged cell view
+    private OnTransferListener<T> onTransferListener;
+    private int[] sourceLocation = new int[2];
+    private int[] targetLocation = new int[2];
+
+    public interface OnTransferListener<T> {
+        /**
+         * Called when a cell has been moved to another PigeonholeView,
+         * before setViewPosition() is called on the DataProvider of the
+         * target view. You should move the object from the data set of
+         * the source view to that of the target view here.
+         *
+         * @param from   The view which the cell belonged to
+         * @param to     The view which the cell has been moved to
+         * @param object Object representing the cell
+         */
+        void onTransfer(PigeonholeView<T> from, PigeonholeView<T> to, T object);
+    }
+
+    /**
+     * Allows dragging cells between the view and other registered views.
+     *
+     * @param view PigeonholeView that will be registered
+     */
+    public void register(PigeonholeView<T> view) {
+        if (!views.contains(view)) {
+            views.add(view);
+            view.setDragCoordinator(this);
+        }
+    }
+
+    /**
+     * Stops dragging cells between the view and other registered views.
+     *
+     * @param view PigeonholeView that will be unregistered
+     */
+    public void unregister(PigeonholeView<T> view) {
+        if (views.remove(view)) {
+            view.setDragCoordinator(null);
+        }
+    }
+
+    public OnTransferListener<T> getOnTransferListener() {
+        return onTransferListener;
+    }
+
+    /**
+     * Sets the listener that will be called when a cell has been moved
+     * to another PigeonholeView.
+     *
+     * @param onTransferListener The callback that will run
+     */
+    public void setOnTransferListener(OnTransferListener<T> onTransferListener) {
+        this.onTransferListener = onTransferListener;
+    }
+
+    /**
+     * Returns the view which currently holds the dragged cell view.
+     *
+     * @param source The view where the drag has started
+     * @return The view holding the dragged cell view
+     */
+    PigeonholeView<T> getDragOwner(PigeonholeView<T> source) {
+        return dragOwner != null ? dragOwner : source;
+    }
+
+    void resetDragOwner() {
+        dragOwner = null;
+    }
+
+    /**
+     * Hands the dragged cell view over to the view under the pointer.
+     *
+     * @param source The view where the drag has started
+     * @param x      Pointer position along the x-axis in source coordinates
+     * @param y      Pointer position along the y-axis in source coordinates
+     * @return The view holding the dragged cell view
+     */
+    PigeonholeView<T> updateDragOwner(PigeonholeView<T> source, float x, float y) {
+        PigeonholeView<T> currentOwner = getDragOwner(source);
+        PigeonholeView<T> newOwner = findViewAt(source, x, y);
+        if (newOwner != currentOwner) {
+            PigeonholeView.CellData<T> cellData = currentOwner.releaseDraggedCell();
+            newOwner.acceptDraggedCell(cellData, newOwner != source);
+            dragOwner = newOwner;
+        }
+        return newOwner;
+    }
+
+    /**
+     * Returns the offset for converting coordinates of the source view
+     * into those of the target view.
+     *
+     * @param source The view where the drag has started
+     * @param target Another registered view
+     * @return Point(x-pixels, y-pixels)
+     */
+    Point getOffset(PigeonholeView<T> source, PigeonholeView<T> target) {
+        source.getLocationOnScreen(sourceLocation);
+        target.getLocationOnScreen(targetLocation);
+        return new Point(sourceLocation[0] - targetLocation[0], sourceLocation[1] - targetLocation[1]);
+    }
+
+    void notifyTransfer(PigeonholeView<T> from, PigeonholeView<T> to, T object) {
+        if (onTransferListener != null) {
+            onTransferListener.onTransfer(from, to, object);
+        }
+    }
+
+    /**
+     * Returns the registered view under x,y. If the pointer is not over
+     * any other view, returns the source view.
+     *
+     * @param source The view where the drag has started
+     * @param x      Pixels along the x-axis in source coordinates
+     * @param y      Pixels along the y-axis in source coordinates
+     * @return The view under x,y
+     */
+    private PigeonholeView<T> findViewAt(PigeonholeView<T> source, float x, float y) {
+        source.getLocationOnScreen(sourceLocation);
+        float screenX = sourceLocation[0] + x;
+        float screenY = sourceLocation[1] + y;
+        for (int i = 0, l = views.size(); i < l; i++) {
+            PigeonholeView<T> view = views.get(i);
+            if (view == source || !view.isShown()) {
+                continue;
+            }
+            view.getLocationOnScreen(targetLocation);
+            if (screenX >= targetLocation[0] && screenX < targetLocation[0] + view.getWidth()
+                    && screenY >= targetLocation[1] && screenY < targetLocation[1] + view.getHeight()) {
+                return view;
+            }
+        }
+        return source;
+    }
+}
@@ -0,0 +1,166 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps a downscaled image of the last rendered grid in a file, so that
+ * PigeonholeView can draw it on the first frame of the next launch before
+ * the cells are bound. The file also records the number of columns and
+ * rows, and the image is not used if the grid shape has changed.
+ *
+ * Pass this to PigeonholeView.setGridSnapshot() before setDataProvider().
+ * The file is read and written on a background thread.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class GridSnapshot {
+    public static final String TAG = GridSnapshot.class.getSimpleName();
+
+    private static final int MAGIC = 0x50484753; // "PHGS"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private ExecutorService executor;
+    private Handler mainHandler;
+
+    /**
+     * Called on the main thread when the snapshot has been read.
+     */
+    interface OnLoadListener {
+        /**
+         * @param bitmap     The image of the grid area, or null if there is no usable snapshot
+         * @param numColumns The number of columns when the snapshot was taken
+         * @param numRows    The number of rows when the snapshot was taken
+         */
+        void onLoad(Bitmap bitmap, int numColumns, int numRows);
+    }
+
+    /**
+     * Creates a GridSnapshot.
+     *
+     * @param file The file where the snapshot is stored
+     */
+    public GridSnapshot(File file) {
+        this.file = file;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Deletes the stored snapshot.
+     */
+    public void discard() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (file.exists() && !file.delete()) {
+                    Log.e(TAG, "Failed to delete snapshot: " + file);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the snapshot on the background thread.
+     *
+     * @param listener Listener which receives the image on the main thread
+     */
+    void load(final OnLoadListener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                int numColumns = 0;
+                int numRows = 0;
+                try {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    try {
+                        if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                            numColumns = in.readInt();
+                            numRows = in.readInt();
+                            bitmap = BitmapFactory.decodeStream(in, null, null);
+                        } else {
+                            Log.e(TAG, "Unknown snapshot format: " + file);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                } catch (FileNotFoundException e) {
+                    // No snapshot yet
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to read snapshot: " + e.getMessage());
+                }
+
+                final Bitmap result = bitmap;
+                final int resultColumns = numColumns;
+                final int resultRows = numRows;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onLoad(result, resultColumns, resultRows);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Writes the image on the background thread and recycles it.
+     *
+     * @param bitmap     The image of the grid area
+     * @param numColumns The number of columns
+     * @param numRows    The number of rows
+     */
+    void save(final Bitmap bitmap, final int numColumns, final int numRows) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File tempFile = new File(file.getPath() + ".tmp");
+                try {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+                    try {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeInt(numColumns);
+                        out.writeInt(numRows);
+                        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+                    } finally {
+                        out.close();
+                    }
+                    if (!tempFile.renameTo(file)) {
+                        Log.e(TAG, "Failed to replace snapshot: " + file);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to write snapshot: " + e.getMessage());
+                } finally {
+                    bitmap.recycle();
+                }
+            }
+        });
+    }
+}
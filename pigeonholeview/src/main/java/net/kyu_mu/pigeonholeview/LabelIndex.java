@@ -0,0 +1,165 @@
+package net.kyu_mu.pigeonholeview;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * Substring index over the labels of cells. Each label is split into
+ * grams of up to three characters, and each gram maps to a sorted list of
+ * entry indexes. A query is answered by intersecting the lists for its
+ * grams and then checking the few candidates with String.contains().
+ * Entries can be added and removed one by one; removed entries are
+ * skipped until the index is rebuilt.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+class LabelIndex<K> {
+    private static final int GRAM_LENGTH = 3;
+
+    private ArrayList<K> keys = new ArrayList<>(); // null for removed entries
+    private ArrayList<String> labels = new ArrayList<>();
+    private IdentityHashMap<K, Integer> indexes = new IdentityHashMap<>();
+    private HashMap<String, IntList> postings = new HashMap<>();
+    private int removedCount = 0;
+
+    /**
+     * Growable sorted list of entry indexes.
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] newValues = new int[size * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+    }
+
+    static String normalize(CharSequence text) {
+        return text == null ? "" : text.toString().toLowerCase(Locale.getDefault());
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    K getKey(int index) {
+        return keys.get(index);
+    }
+
+    /**
+     * Returns the index of the entry for the key.
+     *
+     * @param key The key
+     * @return The index, or -1 if the key is not in the index
+     */
+    int indexOf(K key) {
+        Integer index = indexes.get(key);
+        return index != null ? index : -1;
+    }
+
+    void add(K key, CharSequence label) {
+        if (indexes.containsKey(key)) {
+            remove(key);
+        }
+        int index = keys.size();
+        String text = normalize(label);
+        keys.add(key);
+        labels.add(text);
+        indexes.put(key, index);
+        // Entries are appended in increasing order, so the lists stay sorted
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int start = 0; start + length <= text.length(); start++) {
+                String gram = text.substring(start, start + length);
+                IntList list = postings.get(gram);
+                if (list == null) {
+                    list = new IntList();
+                    postings.put(gram, list);
+                }
+                if (list.size == 0 || list.values[list.size - 1] != index) { // repeated gram
+                    list.add(index);
+                }
+            }
+        }
+    }
+
+    void remove(K key) {
+        Integer index = indexes.remove(key);
+        if (index == null) {
+            return;
+        }
+        keys.set(index, null);
+        labels.set(index, null);
+        removedCount++;
+        if (removedCount > 64 && removedCount > keys.size() / 2) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Sets the bits of the entries whose labels contain the query.
+     *
+     * @param query   Normalized query, which must not be empty
+     * @param matches BitSet which receives the entry indexes
+     */
+    void match(String query, BitSet matches) {
+        matches.clear();
+        IntList smallest = null;
+        ArrayList<IntList> lists = new ArrayList<>();
+        int length = Math.min(query.length(), GRAM_LENGTH);
+        for (int start = 0; start + length <= query.length(); start++) {
+            IntList list = postings.get(query.substring(start, start + length));
+            if (list == null) {
+                return; // no label contains this gram
+            }
+            lists.add(list);
+            if (smallest == null || list.size < smallest.size) {
+                smallest = list;
+            }
+        }
+        if (smallest == null) {
+            return;
+        }
+        // Candidates are the entries in every list; walk the smallest one
+        int[] cursors = new int[lists.size()];
+        for (int i = 0; i < smallest.size; i++) {
+            int index = smallest.values[i];
+            if (keys.get(index) == null) {
+                continue;
+            }
+            boolean isCandidate = true;
+            for (int j = 0, l = lists.size(); j < l && isCandidate; j++) {
+                IntList list = lists.get(j);
+                while (cursors[j] < list.size && list.values[cursors[j]] < index) {
+                    cursors[j]++;
+                }
+                isCandidate = cursors[j] < list.size && list.values[cursors[j]] == index;
+            }
+            if (isCandidate && (query.length() <= GRAM_LENGTH || labels.get(index).contains(query))) {
+                matches.set(index);
+            }
+        }
+    }
+
+    private void rebuild() {
+        ArrayList<K> oldKeys = keys;
+        ArrayList<String> oldLabels = labels;
+        keys = new ArrayList<>();
+        labels = new ArrayList<>();
+        indexes = new IdentityHashMap<>();
+        postings = new HashMap<>();
+        removedCount = 0;
+        for (int i = 0, l = oldKeys.size(); i < l; i++) {
+            if (oldKeys.get(i) != null) {
+                add(oldKeys.get(i), oldLabels.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Builds text layouts for cell labels on background threads and caches
+ * them by text and layout width. The layout width is derived from the
+ * cell width, the column span of the cell and the label padding. Use with
+ * CellLabelView so that labels are not measured on the UI thread when
+ * cells are bound.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class LabelLayoutCache {
+    public static final String TAG = LabelLayoutCache.class.getSimpleName();
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final TextPaint paint;
+    private final Layout.Alignment alignment;
+    private int width;
+    private int labelPadding = 0;
+    private LruCache<String, FutureTask<Layout>> cache;
+    private ExecutorService executor;
+
+    /**
+     * Creates a LabelLayoutCache. The width is set to the cell width
+     * when this cache is passed to PigeonholeView.setLabelLayoutCache().
+     *
+     * @param paint Paint for the labels. It must not be modified afterwards.
+     */
+    public LabelLayoutCache(TextPaint paint) {
+        this(paint, Layout.Alignment.ALIGN_CENTER, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a LabelLayoutCache.
+     *
+     * @param paint      Paint for the labels. It must not be modified afterwards.
+     * @param alignment  Alignment of the labels
+     * @param maxEntries Maximum number of layouts kept in the cache
+     */
+    public LabelLayoutCache(TextPaint paint, Layout.Alignment alignment, int maxEntries) {
+        this.paint = paint;
+        this.alignment = alignment;
+        this.cache = new LruCache<>(maxEntries);
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                new ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, TAG + " #" + (++count));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Sets the width which labels are laid out at.
+     *
+     * @param width Width in pixels
+     */
+    public void setWidth(int width) {
+        if (this.width != width) {
+            this.width = width;
+            cache.evictAll();
+        }
+    }
+
+    public int getLabelPadding() {
+        return labelPadding;
+    }
+
+    /**
+     * Sets the horizontal space in a cell which is not available to the
+     * label, i.e. the left and right padding of the cell layout and of
+     * CellLabelView combined.
+     *
+     * @param labelPadding Padding in pixels
+     */
+    public void setLabelPadding(int labelPadding) {
+        if (this.labelPadding != labelPadding) {
+            this.labelPadding = labelPadding;
+            cache.evictAll();
+        }
+    }
+
+    /**
+     * Returns the width which labels of cells with the column span are laid out at.
+     *
+     * @param columnSpan The number of columns of the cell
+     * @return Width in pixels
+     */
+    public int getLayoutWidth(int columnSpan) {
+        return Math.max(width * Math.max(columnSpan, 1) - labelPadding, 0);
+    }
+
+    public TextPaint getPaint() {
+        return paint;
+    }
+
+    /**
+     * Starts building the layout for the text of a 1x1 cell on a background thread.
+     *
+     * @param text The label text
+     */
+    public void prefetch(CharSequence text) {
+        prefetch(text, 1);
+    }
+
+    /**
+     * Starts building the layout for the text on a background thread.
+     *
+     * @param text       The label text
+     * @param columnSpan The number of columns of the cell
+     */
+    public void prefetch(CharSequence text, int columnSpan) {
+        if (text == null) {
+            return;
+        }
+        int layoutWidth = getLayoutWidth(columnSpan);
+        String key = getKey(text, layoutWidth);
+        if (cache.get(key) != null) {
+            return;
+        }
+        FutureTask<Layout> task = createTask(text, layoutWidth);
+        cache.put(key, task);
+        executor.execute(task);
+    }
+
+    /**
+     * Returns the layout for the text of a 1x1 cell.
+     *
+     * @param text The label text
+     * @return The layout for the text
+     */
+    public Layout getLayout(CharSequence text) {
+        return getLayout(text, 1);
+    }
+
+    /**
+     * Returns the layout for the text. If the layout is not ready yet, it
+     * is built on the calling thread. This never waits for a background
+     * thread; if one is still building the same layout, the layout built
+     * here replaces it in the cache.
+     *
+     * @param text       The label text
+     * @param columnSpan The number of columns of the cell
+     * @return The layout for the text
+     */
+    public Layout getLayout(CharSequence text, int columnSpan) {
+        int layoutWidth = getLayoutWidth(columnSpan);
+        String key = getKey(text, layoutWidth);
+        FutureTask<Layout> task = cache.get(key);
+        if (task == null) {
+            task = createTask(text, layoutWidth);
+            cache.put(key, task);
+        }
+        task.run(); // does nothing if the task has been started already
+        if (!task.isDone()) {
+            // A background thread is in the middle of it
+            task = createTask(text, layoutWidth);
+            task.run();
+            cache.put(key, task);
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(TAG, "Failed to build layout: " + e.getMessage());
+            return buildLayout(text, new TextPaint(paint), layoutWidth);
+        }
+    }
+
+    /**
+     * Removes all layouts from the cache.
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * Stops the background threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        cache.evictAll();
+    }
+
+    private static String getKey(CharSequence text, int layoutWidth) {
+        return layoutWidth + ":" + text;
+    }
+
+    private FutureTask<Layout> createTask(final CharSequence text, final int layoutWidth) {
+        return new FutureTask<>(new Callable<Layout>() {
+            @Override
+            public Layout call() {
+                // Paint is not thread safe, so each layout uses its own copy
+                return buildLayout(text, new TextPaint(paint), layoutWidth);
+            }
+        });
+    }
+
+    private Layout buildLayout(CharSequence text, TextPaint textPaint, int layoutWidth) {
+        return new StaticLayout(text, textPaint, layoutWidth, alignment, 1.0f, 0.0f, false);
+    }
+}
@@ -0,0 +1,162 @@
+package net.kyu_mu.pigeonholeview;
+
+/**
+ * Row-major occupancy bitmap of the grid. Each row starts at a word
+ * boundary, so testing a rectangle costs a few word operations per row.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+class OccupancyGrid {
+    private static final int BITS_PER_WORD = 64;
+
+    private int numColumns;
+    private int numRows;
+    private int wordsPerRow;
+    private long[] words;
+
+    OccupancyGrid(int numColumns, int numRows) {
+        this.numColumns = Math.max(numColumns, 0);
+        this.numRows = Math.max(numRows, 0);
+        this.wordsPerRow = (this.numColumns + BITS_PER_WORD - 1) / BITS_PER_WORD;
+        this.words = new long[wordsPerRow * this.numRows];
+    }
+
+    int getNumColumns() {
+        return numColumns;
+    }
+
+    int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Returns whether the rectangle is inside the grid or not.
+     */
+    boolean contains(int col, int row, int colSpan, int rowSpan) {
+        return col >= 0 && row >= 0 && colSpan > 0 && rowSpan > 0
+                && col + colSpan <= numColumns && row + rowSpan <= numRows;
+    }
+
+    /**
+     * Returns whether the rectangle is inside the grid and not occupied.
+     */
+    boolean isVacant(int col, int row, int colSpan, int rowSpan) {
+        if (!contains(col, row, colSpan, rowSpan)) {
+            return false;
+        }
+        int firstWord = col / BITS_PER_WORD;
+        int lastWord = (col + colSpan - 1) / BITS_PER_WORD;
+        for (int r = row; r < row + rowSpan; r++) {
+            int base = r * wordsPerRow;
+            for (int w = firstWord; w <= lastWord; w++) {
+                if ((words[base + w] & rangeMask(col, col + colSpan, w)) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    boolean isOccupied(int col, int row) {
+        if (!contains(col, row, 1, 1)) {
+            return false;
+        }
+        return (words[row * wordsPerRow + col / BITS_PER_WORD] & (1L << (col % BITS_PER_WORD))) != 0;
+    }
+
+    /**
+     * Marks the rectangle as occupied. The part outside the grid is ignored.
+     */
+    void set(int col, int row, int colSpan, int rowSpan) {
+        fill(col, row, colSpan, rowSpan, true);
+    }
+
+    /**
+     * Marks the rectangle as vacant. The part outside the grid is ignored.
+     */
+    void clear(int col, int row, int colSpan, int rowSpan) {
+        fill(col, row, colSpan, rowSpan, false);
+    }
+
+    void clearAll() {
+        for (int i = 0; i < words.length; i++) {
+            words[i] = 0;
+        }
+    }
+
+    /**
+     * Finds the first vacant rectangle in reading order.
+     *
+     * @return The view position of the top-left cell, or PigeonholeView.POSITION_INVALID
+     */
+    int findFirstFit(int colSpan, int rowSpan) {
+        if (colSpan <= 0 || rowSpan <= 0 || colSpan > numColumns || rowSpan > numRows) {
+            return PigeonholeView.POSITION_INVALID;
+        }
+        if (wordsPerRow == 1) {
+            long rowMask = numColumns == BITS_PER_WORD ? -1L : (1L << numColumns) - 1;
+            for (int row = 0; row + rowSpan <= numRows; row++) {
+                long occupied = 0;
+                for (int r = row; r < row + rowSpan; r++) {
+                    occupied |= words[r];
+                }
+                // After the shifts, bit i is set if columns i..i+colSpan-1 are all vacant
+                long vacant = ~occupied & rowMask;
+                for (int k = 1; k < colSpan && vacant != 0; k++) {
+                    vacant &= vacant >>> 1;
+                }
+                if (vacant != 0) {
+                    return row * numColumns + Long.numberOfTrailingZeros(vacant);
+                }
+            }
+            return PigeonholeView.POSITION_INVALID;
+        }
+
+        // Rows wider than a word
+        for (int row = 0; row + rowSpan <= numRows; row++) {
+            for (int col = 0; col + colSpan <= numColumns; col++) {
+                if (isVacant(col, row, colSpan, rowSpan)) {
+                    return row * numColumns + col;
+                }
+            }
+        }
+        return PigeonholeView.POSITION_INVALID;
+    }
+
+    private void fill(int col, int row, int colSpan, int rowSpan, boolean occupied) {
+        int fromCol = Math.max(col, 0);
+        int toCol = Math.min(col + colSpan, numColumns);
+        int fromRow = Math.max(row, 0);
+        int toRow = Math.min(row + rowSpan, numRows);
+        if (fromCol >= toCol || fromRow >= toRow) {
+            return;
+        }
+        int firstWord = fromCol / BITS_PER_WORD;
+        int lastWord = (toCol - 1) / BITS_PER_WORD;
+        for (int r = fromRow; r < toRow; r++) {
+            int base = r * wordsPerRow;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long mask = rangeMask(fromCol, toCol, w);
+                if (occupied) {
+                    words[base + w] |= mask;
+                } else {
+                    words[base + w] &= ~mask;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the mask for columns [from, to) within the word.
+     */
+    private static long rangeMask(int from, int to, int wordIndex) {
+        int offset = wordIndex * BITS_PER_WORD;
+        int lo = Math.max(from - offset, 0);
+        int hi = Math.min(to - offset, BITS_PER_WORD);
+        if (lo >= hi) {
+            return 0;
+        }
+        long mask = hi == BITS_PER_WORD ? -1L : (1L << hi) - 1;
+        return mask & (-1L << lo);
+    }
+}
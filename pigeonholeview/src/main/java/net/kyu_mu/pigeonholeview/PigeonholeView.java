@@ -3,27 +3,54 @@ package net.kyu_mu.pigeonholeview;
 import android.animation.Animator;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Grid-based reorderable view like Android home screen.
@@ -36,17 +63,56 @@ public class PigeonholeView<T> extends ViewGroup {
     public static final int POSITION_INVALID = -1;
     public static final int POSITION_DROP_AREA = -2;
 
+    /**
+     * Reflow policy which keeps the view positions when the number of
+     * columns or rows changes. Cells keep their reading order, and cells
+     * above the maximum position are hidden until the grid grows again.
+     */
+    public static final int REFLOW_KEEP_READING_ORDER = 0;
+
+    /**
+     * Reflow policy which keeps the column and row of each cell when the
+     * number of columns or rows changes. Cells outside the new grid are
+     * moved as with REFLOW_SPILL_TO_TRAY.
+     */
+    public static final int REFLOW_KEEP_COLUMN_ROW = 1;
+
+    /**
+     * Reflow policy which keeps the view positions of the cells that still
+     * fit. The other cells are moved to the vacant positions in reading order,
+     * or to the hidden tray after the maximum position if the grid is full.
+     * Cells in the tray come back to the vacant positions when the grid grows.
+     */
+    public static final int REFLOW_SPILL_TO_TRAY = 2;
+
+    private static final int ARRANGE_ASYNC_THRESHOLD = 500; // cells sorted off the main thread from this many
+    private static final float DEFAULT_FILTER_DIM_ALPHA = .25f;
+    private static final long DEFAULT_POPULATION_FRAME_BUDGET = 6; // milliseconds
+    private static final long PREFETCH_SLICE_NANOS = 4000000; // 4 ms per idle slice
+    private static final float SNAPSHOT_SCALE = .5f;
+    private static final long SNAPSHOT_FADE_DURATION = 200; // milliseconds
+
     private Context context;
     private int numColumns;
     private int numRows;
     private long dragStartAnimationDuration;
+    private int dragStartDelay = -1; // negative to start dragging only by long click
+    private float dragStartSlop = -1; // negative to use the system touch slop
     private float topSpaceHeight; // usually this is equal to actionBarSize
     private float editDropAreaTopPadding;
     private String editDropAreaText;
     private float editDropAreaBottomPadding = 0;
     private boolean editable;
+    private boolean autoCompact;
+    private int reflowPolicy;
     private float cellWidth;
     private float cellHeight;
+    private float minCellWidth;
+    private float maxCellWidth;
+    private boolean pinchToResize;
+    private PinchResizeHelper pinchResizeHelper;
+    private OnCellSizeChangeListener onCellSizeChangeListener;
+    private boolean isKeepingDetachedViews = false; // detached views go to prefetchedViews while resizing
     private float widthPerCell;
     private float heightPerCell;
     private CellData<T> hoverCellData;
@@ -54,12 +120,40 @@ public class PigeonholeView<T> extends ViewGroup {
     private ImageView swapTargetView;
     private Paint textPaint;
     private SparseArray<CellData<T>> cellMap;
+    private OccupancyGrid occupancyGrid = new OccupancyGrid(0, 0);
+    private int[] slotOwners = new int[0]; // position of the cell covering each slot, or POSITION_INVALID
+    private LongSparseArray<CellData<T>> idMap; // null unless DataProvider has stable ids
     private int activePointerId = -1; // MotionEvent.INVALID_POINTER_ID;
     private float lastTouchX;
     private float lastTouchY;
     private float posX;
     private float posY;
     private boolean isDragging = false;
+    private CellData<T> pressedCellData; // cell under ACTION_DOWN which may start a quick drag
+    private float downX;
+    private float downY;
+    private long downTime;
+    private long dragDownTime;
+    private boolean isDragStartLatencyPending = false;
+    private long dragStartLatency = -1;
+    private TouchPredictor touchPredictor; // null unless touch prediction is enabled
+    private final Runnable dragStartLatencyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dragStartLatency = SystemClock.uptimeMillis() - dragDownTime;
+        }
+    };
+    private final Runnable predictionSettleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // No move event has come since the pointer stopped; drop the predicted offset
+            if (hoverCellData != null && touchPredictor != null) {
+                long now = SystemClock.uptimeMillis();
+                dispatchDragHover(lastTouchX, lastTouchY,
+                        touchPredictor.getOffsetX(now), touchPredictor.getOffsetY(now));
+            }
+        }
+    };
     private PigeonholeViewListener<T> listener;
     private int editingPosition = POSITION_INVALID;
     private CellData<T> swapCandidateCellData;
@@ -71,6 +165,117 @@ public class PigeonholeView<T> extends ViewGroup {
     private OnCellClickListener<T> onCellClickListener;
     private View editDropAreaView;
     private DataProvider<T> provider;
+    private boolean selectionMode = false;
+    private ArrayList<CellData<T>> selectedCells = new ArrayList<>();
+    private ArrayList<CellData<T>> groupCells = new ArrayList<>(); // cells dragged along with hoverCellData
+    private int[] groupColOffsets;
+    private int[] groupRowOffsets;
+    private DragCoordinator<T> dragCoordinator;
+    private boolean isForeignDrag = false; // true while a cell dragged from another view is over this view
+    private CellImageLoader imageLoader;
+    private LabelLayoutCache labelLayoutCache;
+    private ReorderJournal reorderJournal;
+    private boolean isReplayingJournal = false; // true while undo or redo is being applied
+    private SQLitePositionWriter positionWriter;
+    private ComponentCallbacks2 trimMemoryCallbacks;
+    private ExecutorService arrangeExecutor;
+    private int arrangeGeneration = 0; // incremented by each arrange() so that only the last one is applied
+    private Filter<T> filter;
+    private String filterQuery; // normalized; null if not filtering by text
+    private LabelIndex<CellData<T>> labelIndex; // built on the first text query
+    private final BitSet filterMatches = new BitSet();
+    private int filterMatchCount = 0;
+    private float filterDimAlpha = DEFAULT_FILTER_DIM_ALPHA;
+    private boolean isProgressivePopulationEnabled = false;
+    private long populationFrameBudget = DEFAULT_POPULATION_FRAME_BUDGET;
+    private int populationFocusPosition = 0;
+    private ArrayList<CellData<T>> unboundCells = new ArrayList<>(); // cells waiting for progressive population
+    private int populationIndex = 0;
+    private boolean isPopulationSorted = false;
+    private boolean isPopulationScheduled = false;
+    private Paint placeholderPaint;
+    private final Runnable populationRunnable = new Runnable() {
+        @Override
+        public void run() {
+            isPopulationScheduled = false;
+            populateCells(System.nanoTime() + populationFrameBudget * 1000000);
+        }
+    };
+    private TouchTraceRecorder touchTraceRecorder;
+    private int startedAnimatorCount = 0; // reported by TouchTraceReplayer
+    private boolean isIdlePrefetchEnabled = false;
+    private boolean isPrefetchScheduled = false;
+    private boolean isTouching = false;
+    private int prefetchScanIndex = 0;
+    // Views created in idle time for cells outside the grid; used by attachCellView()
+    private final IdentityHashMap<CellData<T>, View> prefetchedViews = new IdentityHashMap<>();
+    private final MessageQueue.IdleHandler prefetchIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            boolean hasMore = prefetchCellViews(System.nanoTime() + PREFETCH_SLICE_NANOS);
+            if (!hasMore) {
+                isPrefetchScheduled = false;
+            }
+            return hasMore;
+        }
+    };
+    private GridSnapshot gridSnapshot;
+    private Bitmap snapshotBitmap; // drawn under the cells until they are ready
+    private int snapshotNumColumns;
+    private int snapshotNumRows;
+    private long snapshotFadeStartTime = -1;
+    private Paint snapshotPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Rect snapshotSrcRect = new Rect();
+    private RectF snapshotDstRect = new RectF();
+    private boolean areCellViewsReleased = false; // views were released while the window was hidden
+    // Shared by all cell views so that no listener objects are allocated per cell
+    private final CellViewListener cellViewListener = new CellViewListener();
+    private final ConcurrentLinkedQueue<CellMutation<T>> mutationQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isMutationDrainScheduled = new AtomicBoolean(false);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean isApplyingMutations = false;
+    private boolean isReorderPending = false; // onReorder() deferred until the mutations are applied
+    private final Runnable scheduleMutationDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ViewCompat.postOnAnimation(PigeonholeView.this, mutationDrainRunnable);
+        }
+    };
+    private final Runnable mutationDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyMutations();
+        }
+    };
+    private final Object liveValueLock = new Object();
+    private IdentityHashMap<T, Object> pendingLiveValues = new IdentityHashMap<>(); // guarded by liveValueLock
+    private IdentityHashMap<T, Object> applyingLiveValues = new IdentityHashMap<>(); // used only on the main thread
+    private boolean isLiveValueDrainScheduled = false; // guarded by liveValueLock
+    // Latest value of each cell, applied again after each full bind of the cell view
+    private IdentityHashMap<CellData<T>, Object> liveValues = new IdentityHashMap<>();
+    // Cells which received live values, so that a pushed object is not searched for in every frame
+    private final IdentityHashMap<T, CellData<T>> liveValueCells = new IdentityHashMap<>();
+    private final Runnable scheduleLiveValueDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ViewCompat.postOnAnimation(PigeonholeView.this, liveValueDrainRunnable);
+        }
+    };
+    private final Runnable liveValueDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyLiveValues();
+        }
+    };
+    private ArrayList<CellData<T>> dirtyCells = new ArrayList<>();
+    private boolean isBindScheduled = false;
+    private final Runnable bindRunnable = new Runnable() {
+        @Override
+        public void run() {
+            isBindScheduled = false;
+            bindDirtyCells();
+        }
+    };
 
     public interface DataProvider<T> {
         public int getViewPosition(T item);
@@ -82,10 +287,130 @@ public class PigeonholeView<T> extends ViewGroup {
         public Iterator<T> iterator();
     }
 
+    /**
+     * DataProvider which is able to update only a part of an existing cell view.
+     * If the provider implements this interface, notifyObjectChanged(object, payload)
+     * calls bindPartial() instead of getView().
+     */
+    public interface PartialBindDataProvider<T> extends DataProvider<T> {
+        /**
+         * Updates the parts of existingView that are described by payloads.
+         *
+         * @param existingView The view for the item
+         * @param item         The item
+         * @param payloads     Payloads passed to notifyObjectChanged() since the last bind,
+         *                     in the order they were passed
+         */
+        public void bindPartial(View existingView, T item, List<Object> payloads);
+    }
+
+    /**
+     * DataProvider which shows a frequently changing value in a cell, such as
+     * an unread count. Values pushed with pushLiveValue() are applied with
+     * bindLiveValue() at most once per frame for each cell.
+     */
+    public interface LiveValueDataProvider<T> extends DataProvider<T> {
+        /**
+         * Shows the value in the cell view.
+         *
+         * @param existingView The view for the item
+         * @param item         The item
+         * @param value        The latest value pushed for the item
+         */
+        public void bindLiveValue(View existingView, T item, Object value);
+    }
+
+    /**
+     * DataProvider which has a stable id for each item. Items which have the
+     * same id are treated as the same cell even if they are not identical
+     * objects. When a new DataProvider is set, the existing cell views are
+     * reused and animated to their new positions instead of being recreated.
+     */
+    public interface StableIdDataProvider<T> extends DataProvider<T> {
+        /**
+         * Returns the stable id for the item.
+         *
+         * @param item The item
+         * @return The id which is unique within the DataProvider
+         */
+        public long getItemId(T item);
+    }
+
+    /**
+     * DataProvider which provides a label text for each item. If the provider
+     * implements this interface and LabelLayoutCache is set, layouts for all
+     * labels are built on background threads before the cells are bound.
+     */
+    public interface LabelDataProvider<T> extends DataProvider<T> {
+        /**
+         * Returns the label text for the item.
+         *
+         * @param item The item
+         * @return The label text
+         */
+        public CharSequence getLabel(T item);
+    }
+
+    /**
+     * DataProvider whose items may span multiple columns and rows.
+     * The view position of a spanning item is that of its top-left slot.
+     */
+    public interface SpanDataProvider<T> extends DataProvider<T> {
+        /**
+         * Returns the number of columns the item occupies.
+         *
+         * @param item The item
+         * @return The number of columns (1 or more)
+         */
+        public int getColumnSpan(T item);
+
+        /**
+         * Returns the number of rows the item occupies.
+         *
+         * @param item The item
+         * @return The number of rows (1 or more)
+         */
+        public int getRowSpan(T item);
+    }
+
+    /**
+     * Condition for the cells which are highlighted by setFilter().
+     */
+    public interface Filter<T> {
+        /**
+         * @param item The item
+         * @return True if the cell for the item matches
+         */
+        public boolean matches(T item);
+    }
+
     public interface OnCellClickListener<T> {
         void onClick(CellData<T> cellData);
     }
 
+    public interface OnCellSizeChangeListener {
+        /**
+         * Called when the cell size has been changed by a pinch gesture.
+         *
+         * @param cellWidth  The new width of a cell in pixels
+         * @param cellHeight The new height of a cell in pixels
+         */
+        void onCellSizeChanged(float cellWidth, float cellHeight);
+    }
+
+    public interface OnArrangeFinishedListener {
+        /**
+         * Called on the main thread when arrange() has finished.
+         *
+         * @param isArranged True if the cells are in the order of the comparator.
+         *                   False if nothing was moved because a cell did not fit
+         *                   in the packed grid, a cell was being dragged, a later
+         *                   arrange() superseded this one, or the comparator threw
+         *                   an exception on the background thread.
+         */
+        void onArrangeFinished(boolean isArranged);
+    }
+
     public interface PigeonholeViewListener<T> {
         void onDragStart();
 
@@ -97,9 +422,18 @@ public class PigeonholeView<T> extends ViewGroup {
     }
 
     public static class CellData<T> {
+        // Layout of flags: column span in bits 0-14, row span in bits 15-29, FLAG_FULL_BIND_PENDING,
+        // and FLAG_FILTER_MATCHED
+        private static final int SPAN_BITS = 15;
+        private static final int SPAN_MASK = (1 << SPAN_BITS) - 1;
+        private static final int FLAG_FULL_BIND_PENDING = 1 << (SPAN_BITS * 2);
+        private static final int FLAG_FILTER_MATCHED = 1 << (SPAN_BITS * 2 + 1);
+
         private View view;
         private int position;
         private T object;
+        private int flags = 1 | (1 << SPAN_BITS); // 1x1
+        private List<Object> pendingPayloads;
 
         public CellData(View view, int position, T object) {
             this.view = view;
@@ -110,6 +444,12 @@ public class PigeonholeView<T> extends ViewGroup {
         public CellData() {
         }
 
+        /**
+         * Returns the view of this cell. Cells outside the grid have no
+         * view until they fit in the grid again.
+         *
+         * @return The cell view, or null if the cell is not shown
+         */
         public View getView() {
             return view;
         }
@@ -133,6 +473,91 @@ public class PigeonholeView<T> extends ViewGroup {
         public void setObject(T object) {
             this.object = object;
         }
+
+        public int getColumnSpan() {
+            return flags & SPAN_MASK;
+        }
+
+        public int getRowSpan() {
+            return (flags >>> SPAN_BITS) & SPAN_MASK;
+        }
+
+        private void setSpans(int columnSpan, int rowSpan) {
+            flags = (flags & (FLAG_FULL_BIND_PENDING | FLAG_FILTER_MATCHED))
+                    | Math.min(columnSpan, SPAN_MASK)
+                    | (Math.min(rowSpan, SPAN_MASK) << SPAN_BITS);
+        }
+
+        private boolean isSpanned() {
+            return getColumnSpan() > 1 || getRowSpan() > 1;
+        }
+
+        private boolean isFullBindPending() {
+            return (flags & FLAG_FULL_BIND_PENDING) != 0;
+        }
+
+        private void setFullBindPending(boolean isFullBindPending) {
+            if (isFullBindPending) {
+                flags |= FLAG_FULL_BIND_PENDING;
+            } else {
+                flags &= ~FLAG_FULL_BIND_PENDING;
+            }
+        }
+
+        /**
+         * Returns whether the cell was counted in filterMatchCount when the
+         * filter was last evaluated for it. The object may have been changed
+         * in place since then.
+         */
+        private boolean isFilterMatched() {
+            return (flags & FLAG_FILTER_MATCHED) != 0;
+        }
+
+        private void setFilterMatched(boolean isFilterMatched) {
+            if (isFilterMatched) {
+                flags |= FLAG_FILTER_MATCHED;
+            } else {
+                flags &= ~FLAG_FILTER_MATCHED;
+            }
+        }
+    }
+
+    /**
+     * Dispatches clicks and long clicks on any cell view to the cell.
+     */
+    private class CellViewListener implements OnClickListener, OnLongClickListener {
+        @Override
+        public void onClick(View view) {
+            CellData<T> cellData = findCellDataForView(view);
+            if (cellData != null) {
+                onCellClick(cellData);
+            }
+        }
+
+        @Override
+        public boolean onLongClick(View view) {
+            if (isDragging) {
+                return false;
+            }
+            CellData<T> cellData = findCellDataForView(view);
+            if (cellData == null) {
+                return false;
+            }
+            startDrag(cellData);
+            return true;
+        }
+    }
+
+    /**
+     * Net effect of the mutations posted for a cell within a frame.
+     */
+    private static class CellChange<T> {
+        private T object;
+        private boolean isRemoved = false;
+        private boolean isAdded = false;
+        private int movePosition = POSITION_INVALID;
+        private boolean isFullUpdate = false;
+        private ArrayList<Object> payloads = new ArrayList<>();
     }
 
     public PigeonholeView(Context context) {
@@ -154,12 +579,19 @@ public class PigeonholeView<T> extends ViewGroup {
 
         try {
             this.dragStartAnimationDuration = a.getInteger(R.styleable.PigeonholeView_dragStartAnimationDuration, 200);
+            this.dragStartDelay = a.getInteger(R.styleable.PigeonholeView_dragStartDelay, -1);
+            this.dragStartSlop = a.getDimension(R.styleable.PigeonholeView_dragStartSlop, -1);
             this.editable = a.getBoolean(R.styleable.PigeonholeView_editable, true);
+            this.autoCompact = a.getBoolean(R.styleable.PigeonholeView_autoCompact, false);
+            this.reflowPolicy = a.getInt(R.styleable.PigeonholeView_reflowPolicy, REFLOW_KEEP_READING_ORDER);
 
             // a.getDimension() will return a number of pixels
             this.topSpaceHeight = a.getDimension(R.styleable.PigeonholeView_topSpaceHeight, 0);
             this.cellWidth = a.getDimension(R.styleable.PigeonholeView_cellWidth, 80);
             this.cellHeight = a.getDimension(R.styleable.PigeonholeView_cellHeight, 90);
+            this.minCellWidth = a.getDimension(R.styleable.PigeonholeView_minCellWidth, this.cellWidth / 2);
+            this.maxCellWidth = a.getDimension(R.styleable.PigeonholeView_maxCellWidth, this.cellWidth * 2);
+            this.pinchToResize = a.getBoolean(R.styleable.PigeonholeView_pinchToResize, false);
             this.editDropAreaTopPadding = a.getDimension(R.styleable.PigeonholeView_dropAreaTopPadding, 20);
             this.editDropAreaText = a.getString(R.styleable.PigeonholeView_dropAreaText);
         } finally {
@@ -223,599 +655,3488 @@ public class PigeonholeView<T> extends ViewGroup {
     }
 
     /**
-     * Returns the maximum view position for this view.
+     * Returns the width of a cell.
      *
-     * @return The maximum view position
+     * @return The width of a cell in pixels
      */
-    public int getMaxPosition() {
-        return this.numColumns * this.numRows - 1;
+    public float getCellWidth() {
+        return cellWidth;
     }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        int w = MeasureSpec.getSize(widthMeasureSpec) - getPaddingLeft() - getPaddingRight();
-        int h = MeasureSpec.getSize(heightMeasureSpec) - getPaddingTop() - getPaddingBottom();
+    /**
+     * Returns the height of a cell.
+     *
+     * @return The height of a cell in pixels
+     */
+    public float getCellHeight() {
+        return cellHeight;
+    }
 
-        // Call measure() on every child views. Otherwise those views are invisible.
-        if (cellMap != null) {
-            for (int i = 0, l = cellMap.size(); i < l; i++) {
-                CellData<T> cellData = cellMap.valueAt(i);
-                cellData.getView().measure((int) this.widthPerCell, (int) this.heightPerCell);
+    /**
+     * Changes the size of cells. The number of columns and rows is
+     * recalculated and the cells are reflowed according to the reflow
+     * policy in a single layout pass. Existing cell views are kept and
+     * only measured again.
+     *
+     * @param cellWidth  The width of a cell in pixels
+     * @param cellHeight The height of a cell in pixels
+     */
+    public void setCellSize(float cellWidth, float cellHeight) {
+        if (cellWidth <= 0 || cellHeight <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        if (cellWidth == this.cellWidth && cellHeight == this.cellHeight) {
+            return;
+        }
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        if (imageLoader != null) {
+            imageLoader.setTargetSize((int) cellWidth, (int) cellHeight);
+        }
+        if (labelLayoutCache != null) {
+            labelLayoutCache.setWidth((int) cellWidth);
+        }
+        if (getWidth() > 0 && getHeight() > 0) {
+            isKeepingDetachedViews = true;
+            try {
+                layoutComponents(getWidth(), getHeight());
+            } finally {
+                isKeepingDetachedViews = false;
             }
+            invalidate();
         }
-        editDropAreaView.measure(
-                (int) (this.widthPerCell * this.numColumns),
-                (int) (topSpaceHeight - editDropAreaTopPadding - editDropAreaBottomPadding)
-        );
-
-        setMeasuredDimension(w, h);
     }
 
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-
-        layoutComponents(w, h);
+    public boolean isPinchToResizeEnabled() {
+        return pinchToResize;
     }
 
-    @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        // This method must be overridden.
-        // Do not call the superclass method here.
+    /**
+     * Enables or disables resizing cells with a pinch gesture. While the
+     * fingers move, the cells are only scaled; the new size is applied with
+     * setCellSize() when the gesture ends. The aspect ratio of cells is kept.
+     * Available on API level 8 or higher.
+     *
+     * @param enabled True to enable pinch-to-resize
+     */
+    public void setPinchToResizeEnabled(boolean enabled) {
+        this.pinchToResize = enabled;
+        if (!enabled) {
+            pinchResizeHelper = null;
+        } else if (pinchResizeHelper == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
+            pinchResizeHelper = new PinchResizeHelper(context, this);
+        }
     }
 
-    private void layoutComponents(int w, int h) {
-        paddingLeft = paddingRight = w * .03f;
-        paddingTop = h * .03f + topSpaceHeight;
-        paddingBottom = h * .03f;
-
-        float ww = (float) w - paddingLeft - paddingRight;
-        float hh = (float) h - paddingTop - paddingBottom;
+    /**
+     * Sets the range of the cell width for pinch-to-resize.
+     *
+     * @param minCellWidth Minimum width in pixels
+     * @param maxCellWidth Maximum width in pixels
+     */
+    public void setCellWidthRange(float minCellWidth, float maxCellWidth) {
+        this.minCellWidth = minCellWidth;
+        this.maxCellWidth = maxCellWidth;
+    }
 
-        this.numColumns = (int) (ww / this.cellWidth);
-        this.numRows = (int) (hh / this.cellHeight);
+    public OnCellSizeChangeListener getOnCellSizeChangeListener() {
+        return onCellSizeChangeListener;
+    }
 
-        float horizontalReminder = ww - this.numColumns * this.cellWidth;
-        paddingLeft += horizontalReminder / 2.0f;
-        float verticalReminder = hh - this.numRows * this.cellHeight;
-        paddingTop += verticalReminder / 2.0f;
+    /**
+     * Sets the listener that will be called when the cell size has been
+     * changed by a pinch gesture. Save the size here to restore it later.
+     *
+     * @param onCellSizeChangeListener The callback that will run
+     */
+    public void setOnCellSizeChangeListener(OnCellSizeChangeListener onCellSizeChangeListener) {
+        this.onCellSizeChangeListener = onCellSizeChangeListener;
+    }
 
-        this.widthPerCell = this.cellWidth;
-        this.heightPerCell = this.cellHeight;
+    /**
+     * Returns whether a pinch gesture can start now. Called by PinchResizeHelper.
+     *
+     * @return True if no cell is being dragged
+     */
+    boolean canStartPinch() {
+        if (isDragging || cellMap == null || widthPerCell <= 0) {
+            return false;
+        }
+        pressedCellData = null; // do not start a quick drag with the first finger
+        return true;
+    }
 
-        dropTargetView.layout(0, 0, (int) this.widthPerCell, (int) this.heightPerCell);
-        swapTargetView.layout(0, 0, (int) this.widthPerCell, (int) this.heightPerCell);
-        editDropAreaView.layout(
-                (int) paddingLeft,
-                (int) editDropAreaTopPadding,
-                (int) (paddingLeft + this.widthPerCell * this.numColumns),
-                (int) (topSpaceHeight - editDropAreaBottomPadding)
-        );
+    /**
+     * Scales the cell views around the focus point while pinching, without
+     * laying them out. Called by PinchResizeHelper.
+     *
+     * @param scale  Scale since the gesture began
+     * @param focusX X of the focus point
+     * @param focusY Y of the focus point
+     * @return The scale limited to the range of the cell width
+     */
+    float onPinchScale(float scale, float focusX, float focusY) {
+        scale = Math.max(minCellWidth / cellWidth, Math.min(maxCellWidth / cellWidth, scale));
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            View cellView = cellMap.valueAt(i).getView();
+            if (cellView == null) {
+                continue;
+            }
+            // Scaling every view about the same point zooms the whole grid. Views placed
+            // with setX()/setY() keep a translation until they are laid out again.
+            ViewCompat.setPivotX(cellView, focusX - (cellView.getLeft() + ViewCompat.getTranslationX(cellView)));
+            ViewCompat.setPivotY(cellView, focusY - (cellView.getTop() + ViewCompat.getTranslationY(cellView)));
+            ViewCompat.setScaleX(cellView, scale);
+            ViewCompat.setScaleY(cellView, scale);
+        }
+        return scale;
+    }
 
+    /**
+     * Applies the cell size at the end of a pinch gesture. Called by PinchResizeHelper.
+     *
+     * @param scale Scale since the gesture began
+     */
+    void onPinchEnd(float scale) {
         if (cellMap != null) {
-            int maxPosition = getMaxPosition();
-
-            // SparseArray version
             for (int i = 0, l = cellMap.size(); i < l; i++) {
-                int position = cellMap.keyAt(i);
-                if (position <= maxPosition) {
-                    CellData<T> cellData = cellMap.valueAt(i);
-                    if (cellData == hoverCellData) {
-                        continue;
-                    }
-                    int row = position / numColumns;
-                    int col = position % numColumns;
-                    cellData.getView().layout((int) (paddingLeft + col * widthPerCell),
-                            (int) (paddingTop + row * heightPerCell),
-                            (int) (paddingLeft + (col + 1) * widthPerCell),
-                            (int) (paddingTop + (row + 1) * heightPerCell));
+                View cellView = cellMap.valueAt(i).getView();
+                if (cellView != null) {
+                    ViewCompat.setScaleX(cellView, 1f);
+                    ViewCompat.setScaleY(cellView, 1f);
                 }
             }
         }
+        float newCellWidth = Math.max(minCellWidth, Math.min(maxCellWidth, cellWidth * scale));
+        if (Math.abs(newCellWidth - cellWidth) < 1) {
+            return;
+        }
+        setCellSize(newCellWidth, cellHeight * newCellWidth / cellWidth);
+        if (onCellSizeChangeListener != null) {
+            onCellSizeChangeListener.onCellSizeChanged(cellWidth, cellHeight);
+        }
+    }
+
+    public CellImageLoader getImageLoader() {
+        return imageLoader;
     }
 
     /**
-     * Returns whether x,y is inside the drop area or not.
+     * Sets CellImageLoader for this view. Images loaded by the loader are
+     * downsampled to the cell size, and pending loads are cancelled when
+     * a cell view is removed.
      *
-     * @param x Pixels along the x-axis
-     * @param y Pixels along the y-axis
-     * @return True if x,y is inside the drop area. Otherwise false.
+     * @param imageLoader A CellImageLoader
      */
-    private boolean isInDropArea(float x, float y) {
-        return x >= paddingLeft
-                && x <= paddingLeft + widthPerCell * numColumns
-                && y >= editDropAreaTopPadding
-                && y <= topSpaceHeight - editDropAreaBottomPadding;
+    public void setImageLoader(CellImageLoader imageLoader) {
+        this.imageLoader = imageLoader;
+        if (imageLoader != null) {
+            imageLoader.setTargetSize((int) cellWidth, (int) cellHeight);
+        }
+    }
+
+    public LabelLayoutCache getLabelLayoutCache() {
+        return labelLayoutCache;
     }
 
     /**
-     * Returns the view position for x,y.
+     * Sets LabelLayoutCache for this view. The width of the cache is set to
+     * the cell width. Use CellLabelView.setText(text, cache) in getView()
+     * to bind labels with the cached layouts.
      *
-     * @param x Pixels along the x-axis
-     * @param y Pixels along the y-axis
-     * @return The view position for x,y
+     * @param labelLayoutCache A LabelLayoutCache
      */
-    private int getPositionForXY(float x, float y) {
-        if (isInDropArea(x, y)) {
-            return POSITION_DROP_AREA;
-        }
-        if (x < paddingLeft || y < paddingTop) {
-            return POSITION_INVALID;
-        }
-        int row = (int) ((y - paddingTop) / this.heightPerCell);
-        int col = (int) ((x - paddingLeft) / this.widthPerCell);
-        int position = row * this.numColumns + col;
-        if (col >= this.numColumns || position >= this.numColumns * this.numRows) {
-            position = POSITION_INVALID;
+    public void setLabelLayoutCache(LabelLayoutCache labelLayoutCache) {
+        this.labelLayoutCache = labelLayoutCache;
+        if (labelLayoutCache != null) {
+            labelLayoutCache.setWidth((int) cellWidth);
         }
-        return position;
+    }
+
+    public ReorderJournal getReorderJournal() {
+        return reorderJournal;
     }
 
     /**
-     * Returns Point(col, row) for x,y.
+     * Sets ReorderJournal for this view. Every reorder is appended to the
+     * journal once onReorder() is called. The DataProvider must implement
+     * StableIdDataProvider.
      *
-     * @param x Pixels along the x-axis
-     * @param y Pixels along the y-axis
-     * @return Point(col, row) for x,y
+     * @param reorderJournal A ReorderJournal
      */
-    private Point getColRowForXY(float x, float y) {
-        int position = getPositionForXY(x, y);
-        if (position == POSITION_INVALID || position == POSITION_DROP_AREA) {
-            return null;
-        }
-        int row = position / this.numColumns;
-        int col = position % this.numColumns;
-        return new Point(col, row);
+    public void setReorderJournal(ReorderJournal reorderJournal) {
+        this.reorderJournal = reorderJournal;
+    }
+
+    public SQLitePositionWriter getPositionWriter() {
+        return positionWriter;
     }
 
     /**
-     * Returns Point(x-pixels, y-pixels) for the view position.
+     * Sets SQLitePositionWriter for this view. Every new position is queued
+     * to the writer in addition to DataProvider.setViewPosition(). The
+     * DataProvider must implement StableIdDataProvider. The writer is
+     * closed when this view is detached from the window.
      *
-     * @param position The view position
-     * @return Point(x-pixels, y-pixels)
+     * @param positionWriter A SQLitePositionWriter
      */
-    private Point getXYForPosition(int position) {
-        int row = position / this.numColumns;
-        int col = position % this.numColumns;
-        int x = (int) (paddingLeft + col * this.widthPerCell);
-        int y = (int) (paddingTop + row * this.heightPerCell);
-        return new Point(x, y);
+    public void setPositionWriter(SQLitePositionWriter positionWriter) {
+        this.positionWriter = positionWriter;
     }
 
     /**
-     * Returns Point(x-pixels, y-pixels) for the column and row.
+     * Returns the reflow policy.
      *
-     * @param col Column index (starts from zero)
-     * @param row Row index (starts from zero)
-     * @return Point(x-pixels, y-pixels) for the column and row
+     * @return One of REFLOW_KEEP_READING_ORDER, REFLOW_KEEP_COLUMN_ROW and REFLOW_SPILL_TO_TRAY
      */
-    private Point getXYForColRow(int col, int row) {
-        int x = (int) (paddingLeft + col * this.widthPerCell);
-        int y = (int) (paddingTop + row * this.heightPerCell);
-        return new Point(x, y);
+    public int getReflowPolicy() {
+        return reflowPolicy;
     }
 
     /**
-     * Sets DataProvider for this view.
+     * Sets how the view positions are mapped when the number of columns or
+     * rows changes, e.g. on rotation. The default is REFLOW_KEEP_READING_ORDER.
      *
-     * @param provider A DataProvider
+     * @param reflowPolicy One of REFLOW_KEEP_READING_ORDER, REFLOW_KEEP_COLUMN_ROW and REFLOW_SPILL_TO_TRAY
      */
-    public void setDataProvider(DataProvider<T> provider) {
-        this.provider = provider;
-        setupViews();
+    public void setReflowPolicy(int reflowPolicy) {
+        this.reflowPolicy = reflowPolicy;
     }
 
-    private void enableEditing() {
-        if (cellMap != null) {
-            // SparseArray version
-            for (int i = 0, l = cellMap.size(); i < l; i++) {
-                CellData<T> cellData = cellMap.valueAt(i);
-                View view = cellData.getView();
-                view.setLongClickable(true);
-            }
-        }
+    /**
+     * Returns the maximum view position for this view.
+     *
+     * @return The maximum view position
+     */
+    public int getMaxPosition() {
+        return this.numColumns * this.numRows - 1;
     }
 
-    private void disableEditing() {
-        cancelEdit();
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int w = MeasureSpec.getSize(widthMeasureSpec) - getPaddingLeft() - getPaddingRight();
+        int h = MeasureSpec.getSize(heightMeasureSpec) - getPaddingTop() - getPaddingBottom();
 
+        // Call measure() on every child views. Otherwise those views are invisible.
         if (cellMap != null) {
-            // SparseArray version
             for (int i = 0, l = cellMap.size(); i < l; i++) {
                 CellData<T> cellData = cellMap.valueAt(i);
-                View view = cellData.getView();
-                view.setLongClickable(false);
+                if (cellData.getView() != null) {
+                    cellData.getView().measure(getCellViewWidth(cellData), getCellViewHeight(cellData));
+                }
             }
         }
+        editDropAreaView.measure(
+                (int) (this.widthPerCell * this.numColumns),
+                (int) (topSpaceHeight - editDropAreaTopPadding - editDropAreaBottomPadding)
+        );
+
+        setMeasuredDimension(w, h);
     }
 
-    /**
-     * Enable or disable edit mode.
-     *
-     * @param set To enable edit mode, true. To disable, false.
-     */
-    public void setEditable(boolean set) {
-        if (editable != set) {
-            editable = set;
-            if (editable) { // Enable editing
-                enableEditing();
-            } else { // Disable editing
-                disableEditing();
-            }
-        }
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        layoutComponents(w, h);
     }
 
-    /**
-     * Creates and adds cell views using DataProvider.
-     */
-    private void setupViews() {
-        cellMap = new SparseArray<>();
-        Iterator<T> iter = this.provider.iterator();
-        boolean isAltered = false;
-        while (iter.hasNext()) {
-            T item = iter.next();
-            View cellView = this.provider.getView(null, item);
-            int position = this.provider.getViewPosition(item);
-            if (cellView != null && position != POSITION_INVALID) {
-                // check validity of position
-                if (cellMap.get(position) != null) {
-                    int altPosition = getMinimumVacantPosition();
-                    if (altPosition == POSITION_INVALID || altPosition == POSITION_DROP_AREA) {
-                        Log.e(TAG, "No available position for overlapping position: " + position);
-                        continue;
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            if (trimMemoryCallbacks == null) {
+                trimMemoryCallbacks = new ComponentCallbacks2() {
+                    @Override
+                    public void onTrimMemory(int level) {
+                        PigeonholeView.this.onTrimMemory(level);
                     }
-                    Log.w(TAG, "Assigned new position " + altPosition + " for overlapped position " + position);
-                    this.provider.setViewPosition(item, altPosition);
-                    position = altPosition;
-                    isAltered = true;
-                }
 
-                addView(cellView);
-                cellView.setClickable(true);
-                final CellData<T> cellData = new CellData<>(cellView, position, item);
-                cellView.setOnClickListener(new OnClickListener() {
                     @Override
-                    public void onClick(View view) {
-                        if (onCellClickListener != null) {
-                            onCellClickListener.onClick(cellData);
-                        }
+                    public void onConfigurationChanged(Configuration newConfig) {
                     }
-                });
-                cellView.setOnLongClickListener(new OnLongClickListener() {
+
                     @Override
-                    public boolean onLongClick(View view) {
-                        if (isDragging) {
-                            return false;
-                        } else {
-                            startDrag(cellData);
-                            return true;
-                        }
+                    public void onLowMemory() {
+                        PigeonholeView.this.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
                     }
-                });
-                if (!editable) {
-                    cellView.setLongClickable(false);
-                }
-                cellMap.put(cellData.getPosition(), cellData);
+                };
             }
+            getContext().getApplicationContext().registerComponentCallbacks(trimMemoryCallbacks);
         }
-        if (isAltered) {
-            if (listener != null) {
-                listener.onReorder();
-            }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (trimMemoryCallbacks != null) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(trimMemoryCallbacks);
+        }
+        cancelPrefetch();
+        if (arrangeExecutor != null) {
+            arrangeExecutor.shutdownNow();
+            arrangeExecutor = null;
+        }
+        if (positionWriter != null) {
+            positionWriter.close();
         }
     }
 
-    private int getMinimumVacantPositionWithoutUpperLimit() {
-        for (int i = 0; ; i++) {
-            if (cellMap.get(i) == null) {
-                return i;
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == View.VISIBLE) {
+            if (areCellViewsReleased) {
+                restoreCellViews();
             }
+            boolean hasLiveValues;
+            synchronized (liveValueLock) {
+                hasLiveValues = !pendingLiveValues.isEmpty() && !isLiveValueDrainScheduled;
+                if (hasLiveValues) {
+                    isLiveValueDrainScheduled = true;
+                }
+            }
+            if (hasLiveValues) {
+                ViewCompat.postOnAnimation(this, liveValueDrainRunnable);
+            }
+        } else {
+            saveGridSnapshot();
         }
     }
 
-    private int getMinimumVacantPosition() {
-        int maxPosition = this.numColumns * this.numRows - 1;
-        for (int i = 0; i <= maxPosition; i++) {
-            if (cellMap.get(i) == null) {
-                return i;
+    /**
+     * Highlights the cells which match the filter and dims the others.
+     * Only the alpha of the cell views is changed; cells are not rebound.
+     *
+     * @param filter The filter, or null to show all cells normally
+     */
+    public void setFilter(Filter<T> filter) {
+        this.filter = filter;
+        this.filterQuery = null;
+        applyFilter();
+    }
+
+    /**
+     * Highlights the cells whose labels contain the query, ignoring case,
+     * and dims the others. DataProvider must implement LabelDataProvider.
+     * The labels are indexed on the first call and the index is kept up to
+     * date as cells are added, removed and changed, so each call only looks
+     * up the cells which contain the query.
+     *
+     * @param query Text to search for, or null or empty to show all cells normally
+     */
+    public void setFilterQuery(CharSequence query) {
+        this.filter = null;
+        this.filterQuery = null;
+        if (query != null && query.length() > 0) {
+            if (this.provider instanceof LabelDataProvider) {
+                this.filterQuery = LabelIndex.normalize(query);
+            } else {
+                Log.w(TAG, "setFilterQuery: DataProvider does not implement LabelDataProvider");
             }
         }
-        return POSITION_INVALID;
+        applyFilter();
     }
 
     /**
-     * Checks whether the matrix is full. Cells cannot be added
-     * if the matrix is full.
+     * Shows all cells normally.
+     */
+    public void clearFilter() {
+        setFilter(null);
+    }
+
+    public boolean isFiltering() {
+        return filter != null || filterQuery != null;
+    }
+
+    /**
+     * Returns the number of cells which match the current filter.
      *
-     * @return True if the matrix is full. Otherwise false.
+     * @return The number of matched cells, or the number of all cells if not filtering
      */
-    public boolean isFull() {
-        return getMinimumVacantPosition() == POSITION_INVALID;
+    public int getFilterMatchCount() {
+        if (!isFiltering()) {
+            return cellMap != null ? cellMap.size() : 0;
+        }
+        return filterMatchCount;
+    }
+
+    public float getFilterDimAlpha() {
+        return filterDimAlpha;
     }
 
     /**
-     * Adds a cell to this view. You can use this method to dynamically
-     * add a cell. The view position will be automatically assigned.
-     * If there is no view position available, it assigns invisible
-     * (above the maximum) view position.
+     * Sets the alpha of the cells which do not match the filter.
      *
-     * @param object Object representing a cell
+     * @param alpha From 0 to 1
      */
-    public void addObject(T object) {
-        int position = getMinimumVacantPosition();
-        if (position == -1) {
-            position = getMinimumVacantPositionWithoutUpperLimit();
-            Log.w(TAG, "Assigning a position above upper limit: " + position);
+    public void setFilterDimAlpha(float alpha) {
+        this.filterDimAlpha = alpha;
+        if (isFiltering()) {
+            applyFilter();
         }
-        if (this.provider == null) {
-            throw new IllegalStateException("DataProvider is null");
+    }
+
+    private CharSequence getLabel(T object) {
+        return ((LabelDataProvider<T>) this.provider).getLabel(object);
+    }
+
+    /**
+     * Returns whether the cell matches the current filter. Used for single
+     * cells; applyFilter() uses the label index for the text query.
+     *
+     * @param cellData CellData
+     * @return True if the cell matches or no filter is set
+     */
+    private boolean matchesFilter(CellData<T> cellData) {
+        if (filter != null) {
+            return filter.matches(cellData.getObject());
         }
-        this.provider.setViewPosition(object, position);
-        if (listener != null) {
-            listener.onReorder();
+        if (filterQuery != null && this.provider instanceof LabelDataProvider) {
+            return LabelIndex.normalize(getLabel(cellData.getObject())).contains(filterQuery);
         }
+        return true;
+    }
 
-        View cellView = this.provider.getView(null, object);
-        if (cellView != null) {
-            cellView.setClickable(true);
-            final CellData<T> cellData = new CellData<>(cellView, position, object);
-            cellView.setOnClickListener(new OnClickListener() {
-                @Override
-                public void onClick(View view) {
-                    if (onCellClickListener != null) {
-                        onCellClickListener.onClick(cellData);
-                    }
-                }
-            });
-            cellView.setOnLongClickListener(new OnLongClickListener() {
-                @Override
-                public boolean onLongClick(View view) {
-                    if (isDragging) {
-                        return false;
-                    } else {
-                        startDrag(cellData);
-                        return true;
-                    }
+    private float getFilterAlpha(CellData<T> cellData) {
+        return isFiltering() && !matchesFilter(cellData) ? filterDimAlpha : 1f;
+    }
+
+    /**
+     * Dims or restores all cell views according to the current filter.
+     */
+    private void applyFilter() {
+        if (cellMap == null) {
+            return;
+        }
+        boolean isIndexed = false;
+        if (filterQuery != null && this.provider instanceof LabelDataProvider) {
+            if (labelIndex == null) {
+                labelIndex = new LabelIndex<>();
+                for (int i = 0, l = cellMap.size(); i < l; i++) {
+                    CellData<T> cellData = cellMap.valueAt(i);
+                    labelIndex.add(cellData, getLabel(cellData.getObject()));
                 }
-            });
-            if (!editable) {
-                cellView.setLongClickable(false);
             }
-            cellMap.put(position, cellData);
-            addView(cellView);
-            if (position <= getMaxPosition()) {
-                Point cellPoint = getXYForPosition(position);
-                cellView.measure((int) widthPerCell, (int) heightPerCell);
-                cellView.layout(
-                        cellPoint.x,
-                        cellPoint.y,
-                        (int) (cellPoint.x + widthPerCell),
-                        (int) (cellPoint.y + heightPerCell)
-                );
-                invalidate();
+            labelIndex.match(filterQuery, filterMatches);
+            isIndexed = true;
+        }
+        filterMatchCount = 0;
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            boolean isMatched;
+            if (isIndexed) {
+                int index = labelIndex.indexOf(cellData);
+                isMatched = index >= 0 && filterMatches.get(index);
+            } else {
+                isMatched = filter == null || filter.matches(cellData.getObject());
+            }
+            cellData.setFilterMatched(isMatched);
+            if (isMatched) {
+                filterMatchCount++;
+            }
+            View cellView = cellData.getView();
+            if (cellView != null && cellData != hoverCellData) {
+                ViewCompat.setAlpha(cellView, isMatched ? 1f : filterDimAlpha);
             }
         }
     }
 
     /**
-     * Removes a cell from this view.
+     * Dims or restores the cell view according to the current filter.
      *
-     * @param cellData CellData that will be removed
+     * @param cellData CellData
      */
-    private void deleteCell(CellData<T> cellData) {
-        if (cellData == null) {
-            Log.e(TAG, "deleteCell: cellData is null");
-            return;
+    private void applyFilter(CellData<T> cellData) {
+        View cellView = cellData.getView();
+        if (cellView != null && isFiltering()) {
+            ViewCompat.setAlpha(cellView, getFilterAlpha(cellData));
         }
-        cellMap.remove(cellData.getPosition());
+    }
 
-        if (listener != null) {
-            listener.onReorder();
+    public boolean isProgressivePopulationEnabled() {
+        return isProgressivePopulationEnabled;
+    }
+
+    /**
+     * Enables or disables progressive population. When enabled,
+     * setDataProvider() places all cells at once, so that isFull() and
+     * addObject() work as usual, but creates the cell views over multiple
+     * frames within setPopulationFrameBudget() per frame. Cells nearest to
+     * the focus position are created first, and placeholders are drawn for
+     * the others. If a drag starts, the remaining cells are created at once.
+     *
+     * @param enabled True to enable progressive population
+     */
+    public void setProgressivePopulationEnabled(boolean enabled) {
+        this.isProgressivePopulationEnabled = enabled;
+        if (!enabled) {
+            finishPopulation();
         }
+    }
 
-        final View cellView = cellData.getView();
+    public long getPopulationFrameBudget() {
+        return populationFrameBudget;
+    }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-            AnimatorSet animatorSet = new AnimatorSet();
+    /**
+     * Sets the time spent on creating cell views per frame during
+     * progressive population. At least one cell is created per frame.
+     *
+     * @param millis Milliseconds
+     */
+    public void setPopulationFrameBudget(long millis) {
+        this.populationFrameBudget = millis;
+    }
 
-            // shrink
-            ObjectAnimator animScaleX = ObjectAnimator.ofFloat(cellView, "scaleX", 0f);
-            ObjectAnimator animScaleY = ObjectAnimator.ofFloat(cellView, "scaleY", 0f);
+    public int getPopulationFocusPosition() {
+        return populationFocusPosition;
+    }
 
-            // fade out
-            ObjectAnimator animFadeOut = ObjectAnimator.ofFloat(cellView, "alpha", 1f, 0f);
-            animatorSet.playTogether(animScaleX, animScaleY, animFadeOut);
-            animatorSet.addListener(new Animator.AnimatorListener() {
-                @Override
-                public void onAnimationStart(Animator animator) {
-                }
+    /**
+     * Sets the view position from which progressive population spreads.
+     * The default is 0 (top-left).
+     *
+     * @param position The view position
+     */
+    public void setPopulationFocusPosition(int position) {
+        this.populationFocusPosition = position;
+        isPopulationSorted = false;
+    }
 
-                @Override
-                public void onAnimationEnd(Animator animator) {
-                    removeView(cellView);
-                }
+    /**
+     * Returns whether progressive population is in progress or not.
+     *
+     * @return True if some cell views have not been created yet. Otherwise false.
+     */
+    public boolean isPopulating() {
+        return populationIndex < unboundCells.size();
+    }
 
-                @Override
-                public void onAnimationCancel(Animator animator) {
-                }
+    private void schedulePopulation() {
+        if (!isPopulationScheduled) {
+            isPopulationScheduled = true;
+            ViewCompat.postOnAnimation(this, populationRunnable);
+        }
+    }
 
-                @Override
-                public void onAnimationRepeat(Animator animator) {
-                }
-            });
-            animatorSet.start();
+    /**
+     * Creates the views for unbound cells in order of distance from the
+     * focus position until the deadline.
+     *
+     * @param deadline Value of System.nanoTime() at which to stop
+     */
+    private void populateCells(long deadline) {
+        if (!isPopulating()) {
+            return;
+        }
+        if (widthPerCell <= 0 || numColumns <= 0) { // wait until laid out
+            schedulePopulation();
+            return;
+        }
+        if (!isPopulationSorted) {
+            sortUnboundCells();
+        }
+        int count = 0;
+        while (isPopulating() && (count == 0 || System.nanoTime() < deadline)) {
+            CellData<T> cellData = unboundCells.get(populationIndex++);
+            if (cellMap.get(cellData.getPosition()) != cellData || cellData.getView() != null
+                    || !fitsInGrid(cellData)) {
+                continue; // removed, already bound, or moved out of the grid
+            }
+            attachCellView(cellData);
+            if (cellData.getView() != null) {
+                layoutCellView(cellData);
+            }
+            count++;
+        }
+        if (isPopulating()) {
+            schedulePopulation();
         } else {
-            removeView(cellView);
+            onPopulationFinished();
         }
+        invalidate();
     }
 
-    private void deleteHoveringObject() {
-        deleteCell(hoverCellData);
+    /**
+     * Creates the views for all remaining unbound cells at once.
+     */
+    private void finishPopulation() {
+        if (!isPopulating()) {
+            return;
+        }
+        populationIndex = unboundCells.size();
+        onPopulationFinished();
     }
 
-    private void editHoveringObject() {
-        if (hoverCellData != null) {
-            editingPosition = hoverCellData.getPosition();
-            T cellInfo = hoverCellData.getObject();
-            if (listener != null) {
-                listener.onEditObject(cellInfo);
+    private void onPopulationFinished() {
+        unboundCells.clear();
+        populationIndex = 0;
+        // Cells which came into the grid while populating
+        attachVisibleCellViews();
+        startSnapshotFade();
+        schedulePrefetch();
+    }
+
+    /**
+     * Sorts the remaining unbound cells by distance from the focus position.
+     */
+    private void sortUnboundCells() {
+        final int focusColumn = populationFocusPosition % numColumns;
+        final int focusRow = populationFocusPosition / numColumns;
+        List<CellData<T>> remaining = unboundCells.subList(populationIndex, unboundCells.size());
+        Collections.sort(remaining, new Comparator<CellData<T>>() {
+            @Override
+            public int compare(CellData<T> lhs, CellData<T> rhs) {
+                int lhsDistance = getDistance(lhs.getPosition());
+                int rhsDistance = getDistance(rhs.getPosition());
+                if (lhsDistance != rhsDistance) {
+                    return lhsDistance < rhsDistance ? -1 : 1;
+                }
+                return lhs.getPosition() < rhs.getPosition() ? -1 : (lhs.getPosition() == rhs.getPosition() ? 0 : 1);
             }
-        }
+
+            private int getDistance(int position) {
+                int dx = position % numColumns - focusColumn;
+                int dy = position / numColumns - focusRow;
+                return dx * dx + dy * dy;
+            }
+        });
+        isPopulationSorted = true;
     }
 
     /**
-     * Removes the currently editing cell from this view.
+     * Draws placeholders for the cells in the grid whose views have not been
+     * created yet.
+     *
+     * @param canvas Canvas
      */
-    public void deleteEditingObject() {
-        CellData<T> cellData = cellMap.get(editingPosition);
-        if (cellData != null) {
-            deleteCell(cellData);
+    private void drawPlaceholders(Canvas canvas) {
+        if (widthPerCell <= 0) {
+            return;
         }
-
-        if (listener != null) {
-            listener.onDragEnd();
+        if (placeholderPaint == null) {
+            placeholderPaint = new Paint();
+            placeholderPaint.setColor(0x1f000000);
+        }
+        float inset = Math.min(widthPerCell, heightPerCell) * .05f;
+        for (int i = populationIndex, l = unboundCells.size(); i < l; i++) {
+            CellData<T> cellData = unboundCells.get(i);
+            if (cellData.getView() != null || !fitsInGrid(cellData)) {
+                continue;
+            }
+            Point point = getXYForPosition(cellData.getPosition());
+            canvas.drawRect(
+                    point.x + inset,
+                    point.y + inset,
+                    point.x + widthPerCell * cellData.getColumnSpan() - inset,
+                    point.y + heightPerCell * cellData.getRowSpan() - inset,
+                    placeholderPaint
+            );
         }
     }
 
-    private void putBackEditingCellView() {
+    public TouchTraceRecorder getTouchTraceRecorder() {
+        return touchTraceRecorder;
+    }
+
+    /**
+     * Sets TouchTraceRecorder which records the touch events received by
+     * this view. The recorded trace can be replayed with TouchTraceReplayer.
+     *
+     * @param touchTraceRecorder A TouchTraceRecorder, or null to stop recording
+     */
+    public void setTouchTraceRecorder(TouchTraceRecorder touchTraceRecorder) {
+        this.touchTraceRecorder = touchTraceRecorder;
+    }
+
+    /**
+     * Returns the number of animations started by this view so far.
+     *
+     * @return The number of animations
+     */
+    int getStartedAnimatorCount() {
+        return startedAnimatorCount;
+    }
+
+    private void startAnimator(Animator animator) {
+        startedAnimatorCount++;
+        animator.start();
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        if (touchTraceRecorder != null) {
+            touchTraceRecorder.record(ev, getWidth(), getHeight());
+        }
+        int action = MotionEventCompat.getActionMasked(ev);
+        if (action == MotionEvent.ACTION_DOWN) {
+            // Keep the main thread free while the user is touching the view
+            isTouching = true;
+            cancelPrefetch();
+        }
+        boolean handled = super.dispatchTouchEvent(ev);
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            isTouching = false;
+            schedulePrefetch();
+        }
+        return handled;
+    }
+
+    public boolean isIdlePrefetchEnabled() {
+        return isIdlePrefetchEnabled;
+    }
+
+    /**
+     * Enables or disables idle-time prefetch. When enabled, the views for
+     * the cells after getMaxPosition() are created while the main thread is
+     * idle, a few milliseconds at a time, so that they are ready when the
+     * cells come into the grid. Up to one grid of views is kept. Prefetch
+     * pauses while the view is touched or a cell is dragged.
+     *
+     * @param enabled True to enable prefetch
+     */
+    public void setIdlePrefetchEnabled(boolean enabled) {
+        this.isIdlePrefetchEnabled = enabled;
+        if (enabled) {
+            schedulePrefetch();
+        } else {
+            cancelPrefetch();
+            clearPrefetchedViews();
+        }
+    }
+
+    private void schedulePrefetch() {
+        if (!isIdlePrefetchEnabled || isPrefetchScheduled || isTouching || isDragging || cellMap == null
+                || isPopulating()) {
+            return;
+        }
+        isPrefetchScheduled = true;
+        prefetchScanIndex = 0;
+        Looper.myQueue().addIdleHandler(prefetchIdleHandler);
+    }
+
+    private void cancelPrefetch() {
+        if (isPrefetchScheduled) {
+            isPrefetchScheduled = false;
+            Looper.myQueue().removeIdleHandler(prefetchIdleHandler);
+        }
+    }
+
+    /**
+     * Creates views for the cells outside the grid until the deadline.
+     * Called from the idle handler.
+     *
+     * @param deadline Value of System.nanoTime() at which to stop
+     * @return True if more views should be prefetched in the next idle time
+     */
+    private boolean prefetchCellViews(long deadline) {
+        if (!isIdlePrefetchEnabled || isTouching || isDragging || this.provider == null
+                || cellMap == null || widthPerCell <= 0) {
+            return false;
+        }
+        int limit = getPrefetchLimit();
+        while (prefetchedViews.size() < limit) {
+            if (System.nanoTime() >= deadline) {
+                return true;
+            }
+            // cellMap is sorted by position, so the cells nearest to the grid come first
+            CellData<T> cellData = null;
+            while (prefetchScanIndex < cellMap.size()) {
+                CellData<T> candidate = cellMap.valueAt(prefetchScanIndex++);
+                if (candidate.getView() == null && !fitsInGrid(candidate) && !prefetchedViews.containsKey(candidate)) {
+                    cellData = candidate;
+                    break;
+                }
+            }
+            if (cellData == null) {
+                return false;
+            }
+            View cellView = this.provider.getView(null, cellData.getObject());
+            if (cellView != null) {
+                prefetchedViews.put(cellData, cellView);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the maximum number of views kept in prefetchedViews, which is
+     * one grid of cells.
+     *
+     * @return The maximum number of views
+     */
+    private int getPrefetchLimit() {
+        return Math.max(1, numColumns * numRows);
+    }
+
+    private void removePrefetchedView(CellData<T> cellData) {
+        View cellView = prefetchedViews.remove(cellData);
+        if (cellView != null && imageLoader != null) {
+            imageLoader.cancelAll(cellView);
+        }
+    }
+
+    private void clearPrefetchedViews() {
+        if (imageLoader != null) {
+            for (View cellView : prefetchedViews.values()) {
+                imageLoader.cancelAll(cellView);
+            }
+        }
+        prefetchedViews.clear();
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (snapshotBitmap != null) {
+            drawGridSnapshot(canvas);
+        } else if (isPopulating()) {
+            drawPlaceholders(canvas);
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    public GridSnapshot getGridSnapshot() {
+        return gridSnapshot;
+    }
+
+    /**
+     * Sets GridSnapshot which stores an image of the grid. If no cells have
+     * been set up yet, the stored image is read and drawn until the cells
+     * are ready, and then cross-faded into the cells. A new image is saved
+     * when the window is hidden. Call this before setDataProvider().
+     *
+     * @param gridSnapshot A GridSnapshot, or null to stop using it
+     */
+    public void setGridSnapshot(GridSnapshot gridSnapshot) {
+        this.gridSnapshot = gridSnapshot;
+        if (gridSnapshot == null) {
+            discardSnapshotBitmap();
+            invalidate();
+            return;
+        }
+        if (cellMap != null) {
+            return;
+        }
+        gridSnapshot.load(new GridSnapshot.OnLoadListener() {
+            @Override
+            public void onLoad(Bitmap bitmap, int numColumns, int numRows) {
+                if (bitmap == null) {
+                    return;
+                }
+                if (cellMap != null || snapshotBitmap != null || PigeonholeView.this.gridSnapshot == null) {
+                    // The cells are already there
+                    bitmap.recycle();
+                    return;
+                }
+                snapshotBitmap = bitmap;
+                snapshotNumColumns = numColumns;
+                snapshotNumRows = numRows;
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Draws the snapshot over the grid area. The snapshot is discarded if
+     * the grid shape differs from the one it was taken with.
+     *
+     * @param canvas Canvas
+     */
+    private void drawGridSnapshot(Canvas canvas) {
+        if (widthPerCell <= 0) { // not laid out yet
+            return;
+        }
+        if (snapshotNumColumns != numColumns || snapshotNumRows != numRows) {
+            discardSnapshotBitmap();
+            return;
+        }
+        int alpha = 255;
+        if (snapshotFadeStartTime >= 0) {
+            long elapsed = SystemClock.uptimeMillis() - snapshotFadeStartTime;
+            if (elapsed >= SNAPSHOT_FADE_DURATION) {
+                discardSnapshotBitmap();
+                return;
+            }
+            alpha = (int) (255 * (SNAPSHOT_FADE_DURATION - elapsed) / SNAPSHOT_FADE_DURATION);
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+        snapshotPaint.setAlpha(alpha);
+        snapshotSrcRect.set(0, 0, snapshotBitmap.getWidth(), snapshotBitmap.getHeight());
+        snapshotDstRect.set(paddingLeft, paddingTop,
+                paddingLeft + widthPerCell * numColumns, paddingTop + heightPerCell * numRows);
+        canvas.drawBitmap(snapshotBitmap, snapshotSrcRect, snapshotDstRect, snapshotPaint);
+    }
+
+    private void discardSnapshotBitmap() {
+        if (snapshotBitmap != null) {
+            snapshotBitmap.recycle();
+            snapshotBitmap = null;
+        }
+        snapshotFadeStartTime = -1;
+    }
+
+    /**
+     * Starts fading out the snapshot. Called when the cells have been set up.
+     */
+    private void startSnapshotFade() {
+        if (snapshotBitmap != null && snapshotFadeStartTime < 0) {
+            snapshotFadeStartTime = SystemClock.uptimeMillis();
+            invalidate();
+        }
+    }
+
+    /**
+     * Fades in the view of a cell which has been created while the snapshot
+     * is drawn, so that each cell replaces its image in the snapshot smoothly.
+     *
+     * @param cellData CellData whose view has just been created
+     */
+    private void fadeInCellView(CellData<T> cellData) {
+        if (snapshotBitmap == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        startAnimator(ObjectAnimator.ofFloat(cellData.getView(), "alpha", 0f, getFilterAlpha(cellData))
+                .setDuration(SNAPSHOT_FADE_DURATION));
+    }
+
+    /**
+     * Draws the grid area into a downscaled bitmap and stores it in GridSnapshot.
+     * The stored snapshot is kept while the cell views are released, since
+     * the grid would be drawn empty.
+     */
+    private void saveGridSnapshot() {
+        if (gridSnapshot == null || cellMap == null || widthPerCell <= 0 || isDragging || snapshotBitmap != null
+                || areCellViewsReleased) {
+            return;
+        }
+        float gridWidth = widthPerCell * numColumns;
+        float gridHeight = heightPerCell * numRows;
+        int bitmapWidth = (int) (gridWidth * SNAPSHOT_SCALE);
+        int bitmapHeight = (int) (gridHeight * SNAPSHOT_SCALE);
+        if (bitmapWidth <= 0 || bitmapHeight <= 0) {
+            return;
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Not enough memory for grid snapshot");
+            return;
+        }
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(SNAPSHOT_SCALE, SNAPSHOT_SCALE);
+        canvas.translate(-paddingLeft, -paddingTop);
+        draw(canvas);
+        gridSnapshot.save(bitmap, numColumns, numRows);
+    }
+
+    /**
+     * Releases memory according to the level passed to
+     * ComponentCallbacks2.onTrimMemory(). This is called automatically on
+     * API level 14 or higher while the view is attached to a window. On
+     * older versions, call this from Activity.onLowMemory() with
+     * TRIM_MEMORY_COMPLETE.
+     *
+     * <ul>
+     * <li>Running low or critical: the image cache is shrunk to a half or emptied.
+     * Visible cells are kept as they are.</li>
+     * <li>UI hidden: the image cache and the label layouts are dropped.</li>
+     * <li>Background or lower: the cell views are also released, and are created
+     * again when the window becomes visible.</li>
+     * </ul>
+     *
+     * @param level The trim level
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) { // includes UI_HIDDEN and higher
+            if (imageLoader != null) {
+                imageLoader.clearCache();
+            }
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            if (imageLoader != null) {
+                imageLoader.trimCache(.5f);
+            }
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cancelPrefetch();
+            clearPrefetchedViews();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            if (labelLayoutCache != null) {
+                labelLayoutCache.clear();
+            }
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND && getWindowVisibility() != View.VISIBLE) {
+            releaseCellViews();
+        }
+    }
+
+    /**
+     * Removes the views of all cells while the window is hidden. Cells keep
+     * their positions and objects, so the views can be recreated by
+     * restoreCellViews(). Nothing is released while a cell is being dragged
+     * or cells are selected, since those states live in the views.
+     */
+    private void releaseCellViews() {
+        if (cellMap == null || isDragging || selectionMode || areCellViewsReleased) {
+            return;
+        }
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            detachCellView(cellMap.valueAt(i));
+        }
+        areCellViewsReleased = true;
+    }
+
+    /**
+     * Recreates the views for the cells in the grid after releaseCellViews().
+     */
+    private void restoreCellViews() {
+        areCellViewsReleased = false;
+        attachVisibleCellViews();
+    }
+
+    /**
+     * Creates the views for all cells in the grid which have no view.
+     */
+    private void attachVisibleCellViews() {
+        if (cellMap == null || widthPerCell <= 0) {
+            return;
+        }
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            if (cellData.getView() == null && fitsInGrid(cellData)) {
+                attachCellView(cellData);
+                if (cellData.getView() != null) {
+                    layoutCellView(cellData);
+                }
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        // This method must be overridden.
+        // Do not call the superclass method here.
+    }
+
+    private void layoutComponents(int w, int h) {
+        paddingLeft = paddingRight = w * .03f;
+        paddingTop = h * .03f + topSpaceHeight;
+        paddingBottom = h * .03f;
+
+        float ww = (float) w - paddingLeft - paddingRight;
+        float hh = (float) h - paddingTop - paddingBottom;
+
+        int oldNumColumns = this.numColumns;
+        int oldNumRows = this.numRows;
+        boolean wasLaidOut = this.widthPerCell > 0;
+        this.numColumns = (int) (ww / this.cellWidth);
+        this.numRows = (int) (hh / this.cellHeight);
+
+        float horizontalReminder = ww - this.numColumns * this.cellWidth;
+        paddingLeft += horizontalReminder / 2.0f;
+        float verticalReminder = hh - this.numRows * this.cellHeight;
+        paddingTop += verticalReminder / 2.0f;
+
+        this.widthPerCell = this.cellWidth;
+        this.heightPerCell = this.cellHeight;
+
+        dropTargetView.layout(0, 0, (int) this.widthPerCell, (int) this.heightPerCell);
+        swapTargetView.layout(0, 0, (int) this.widthPerCell, (int) this.heightPerCell);
+        editDropAreaView.layout(
+                (int) paddingLeft,
+                (int) editDropAreaTopPadding,
+                (int) (paddingLeft + this.widthPerCell * this.numColumns),
+                (int) (topSpaceHeight - editDropAreaBottomPadding)
+        );
+
+        rebuildOccupancyGrid();
+        if (!wasLaidOut) {
+            resolveOverlappingCells();
+        } else if (!isDragging && (numColumns != oldNumColumns || numRows != oldNumRows)) {
+            reflowCells(oldNumColumns, oldNumRows);
+        }
+
+        if (cellMap != null) {
+            // SparseArray version
+            for (int i = 0, l = cellMap.size(); i < l; i++) {
+                CellData<T> cellData = cellMap.valueAt(i);
+                if (fitsInGrid(cellData)) {
+                    if (cellData == hoverCellData) {
+                        continue;
+                    }
+                    if (cellData.getView() == null && !isPopulating()) {
+                        attachCellView(cellData);
+                    }
+                    if (cellData.getView() != null) {
+                        layoutCellView(cellData);
+                    }
+                } else if (!isDragging) {
+                    // Do not keep the views which are not shown
+                    detachCellView(cellData);
+                }
+            }
+            if (!wasLaidOut && !isPopulating()) {
+                startSnapshotFade();
+            }
+            schedulePrefetch();
+        }
+    }
+
+    /**
+     * Maps the view positions from the previous grid shape to the current
+     * one according to the reflow policy. DataProvider is notified of the
+     * new positions and onReorder() is called once. The cells are not
+     * animated since the whole view is being laid out again.
+     *
+     * @param oldNumColumns The number of columns before the change
+     * @param oldNumRows    The number of rows before the change
+     */
+    private void reflowCells(int oldNumColumns, int oldNumRows) {
+        if (reflowPolicy == REFLOW_KEEP_READING_ORDER || cellMap == null || cellMap.size() == 0
+                || this.provider == null || oldNumColumns <= 0) {
+            return;
+        }
+        int count = cellMap.size();
+        ArrayList<CellData<T>> cells = new ArrayList<>(count);
+        int[] newPositions = new int[count];
+        OccupancyGrid reflowGrid = new OccupancyGrid(numColumns, numRows);
+
+        // Keep the cells which fit at the mapped positions
+        for (int i = 0; i < count; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            cells.add(cellData);
+            int position = cellData.getPosition();
+            int oldCol = position % oldNumColumns;
+            int oldRow = position / oldNumColumns;
+            int col;
+            int row;
+            if (reflowPolicy == REFLOW_KEEP_COLUMN_ROW) {
+                col = oldCol;
+                row = oldRow;
+            } else {
+                boolean wasShown = oldCol + cellData.getColumnSpan() <= oldNumColumns
+                        && oldRow + cellData.getRowSpan() <= oldNumRows;
+                col = wasShown && numColumns > 0 ? position % numColumns : -1;
+                row = wasShown && numColumns > 0 ? position / numColumns : -1;
+            }
+            if (reflowGrid.isVacant(col, row, cellData.getColumnSpan(), cellData.getRowSpan())) {
+                reflowGrid.set(col, row, cellData.getColumnSpan(), cellData.getRowSpan());
+                newPositions[i] = row * numColumns + col;
+            } else {
+                newPositions[i] = POSITION_INVALID;
+            }
+        }
+
+        // Spill the others to the vacant positions, then to the tray
+        int nextTrayPosition = getMaxPosition() + 1;
+        for (int i = 0; i < count; i++) {
+            if (newPositions[i] != POSITION_INVALID) {
+                continue;
+            }
+            CellData<T> cellData = cells.get(i);
+            int position = reflowGrid.findFirstFit(cellData.getColumnSpan(), cellData.getRowSpan());
+            if (position != POSITION_INVALID) {
+                reflowGrid.set(position % numColumns, position / numColumns,
+                        cellData.getColumnSpan(), cellData.getRowSpan());
+            } else {
+                position = nextTrayPosition++;
+            }
+            newPositions[i] = position;
+        }
+
+        cellMap.clear();
+        boolean isAltered = false;
+        for (int i = 0; i < count; i++) {
+            CellData<T> cellData = cells.get(i);
+            int newPosition = newPositions[i];
+            if (newPosition != cellData.getPosition()) {
+                if (cellData.getPosition() == editingPosition) {
+                    editingPosition = newPosition;
+                }
+                writeViewPosition(cellData.getObject(), cellData.getPosition(), newPosition);
+                cellData.setPosition(newPosition);
+                isAltered = true;
+            }
+            cellMap.put(newPosition, cellData);
+        }
+        rebuildOccupancyGrid();
+
+        if (isAltered) {
+            notifyReorder();
+            if (reorderJournal != null) {
+                // Undo should not restore the positions for the previous grid shape
+                reorderJournal.clearHistory();
+            }
+        }
+    }
+
+    /**
+     * Creates the view for the cell which has become visible.
+     *
+     * @param cellData CellData which has no view
+     */
+    private void attachCellView(CellData<T> cellData) {
+        if (this.provider == null) {
+            return;
+        }
+        View cellView = prefetchedViews.remove(cellData);
+        if (cellView != null) {
+            schedulePrefetch(); // refill
+        } else {
+            cellView = this.provider.getView(null, cellData.getObject());
+        }
+        if (cellView == null) {
+            return;
+        }
+        cellData.setView(cellView);
+        cellData.setFullBindPending(false);
+        cellData.pendingPayloads = null;
+        addView(cellView);
+        setupCellView(cellData);
+        applyFilter(cellData);
+        fadeInCellView(cellData);
+        applyLiveValue(cellData);
+    }
+
+    /**
+     * Removes the view of the cell which is outside the grid. The view is
+     * created again by attachCellView() when the cell fits in the grid.
+     * While the cell size changes, up to one grid of detached views is kept
+     * in prefetchedViews, and the other views are recycled.
+     *
+     * @param cellData CellData
+     */
+    private void detachCellView(CellData<T> cellData) {
+        View cellView = cellData.getView();
+        if (cellView == null) {
+            return;
+        }
+        if (selectedCells.remove(cellData)) {
+            cellView.setSelected(false);
+        }
+        boolean isBindPending = dirtyCells.remove(cellData);
+        cellData.setFullBindPending(false);
+        cellData.pendingPayloads = null;
+        if (isKeepingDetachedViews && !isBindPending && prefetchedViews.size() < getPrefetchLimit()) {
+            // Keep the bound view so that the cell is not inflated again if it comes back.
+            // The cells nearest to the grid are detached first, so they are the ones kept.
+            removeView(cellView);
+            prefetchedViews.put(cellData, cellView);
+        } else {
+            recycleCellView(cellView);
+        }
+        cellData.setView(null);
+    }
+
+    /**
+     * Moves the cells which overlap others to vacant positions. Until the
+     * first layout the grid shape is unknown, so only the top-left
+     * positions of cells have been checked for collisions.
+     */
+    private void resolveOverlappingCells() {
+        if (cellMap == null || numColumns <= 0 || this.provider == null) {
+            return;
+        }
+        occupancyGrid.clearAll();
+        Arrays.fill(slotOwners, POSITION_INVALID);
+        ArrayList<CellData<T>> overlappingCells = new ArrayList<>();
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            int position = cellData.getPosition();
+            if (fitsInGrid(cellData) && !occupancyGrid.isVacant(position % numColumns, position / numColumns,
+                    cellData.getColumnSpan(), cellData.getRowSpan())) {
+                overlappingCells.add(cellData);
+            } else {
+                occupy(cellData, true);
+            }
+        }
+        if (overlappingCells.isEmpty()) {
+            return;
+        }
+        int nextTrayPosition = Math.max(getMaxPosition() + 1, cellMap.keyAt(cellMap.size() - 1) + 1);
+        for (int i = 0, l = overlappingCells.size(); i < l; i++) {
+            CellData<T> cellData = overlappingCells.get(i);
+            int oldPosition = cellData.getPosition();
+            int position = occupancyGrid.findFirstFit(cellData.getColumnSpan(), cellData.getRowSpan());
+            if (position == POSITION_INVALID) {
+                position = nextTrayPosition++;
+            }
+            Log.w(TAG, "Assigned new position " + position + " for overlapped position " + oldPosition);
+            cellMap.remove(oldPosition); // it has not occupied any slot
+            if (oldPosition == editingPosition) {
+                editingPosition = position;
+            }
+            writeViewPosition(cellData.getObject(), oldPosition, position);
+            cellData.setPosition(position);
+            putCell(cellData);
+        }
+        notifyReorder();
+    }
+
+    /**
+     * Recreates the occupancy bitmap for the current number of columns and rows.
+     */
+    private void rebuildOccupancyGrid() {
+        occupancyGrid = new OccupancyGrid(numColumns, numRows);
+        slotOwners = new int[Math.max(numColumns, 0) * Math.max(numRows, 0)];
+        Arrays.fill(slotOwners, POSITION_INVALID);
+        if (cellMap != null) {
+            for (int i = 0, l = cellMap.size(); i < l; i++) {
+                occupy(cellMap.valueAt(i), true);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the whole cell is inside the grid or not.
+     * Cells which do not fit are not laid out.
+     *
+     * @param cellData CellData
+     * @return True if the cell is inside the grid. Otherwise false.
+     */
+    private boolean fitsInGrid(CellData<T> cellData) {
+        int position = cellData.getPosition();
+        if (position < 0 || numColumns <= 0) {
+            return false;
+        }
+        return occupancyGrid.contains(position % numColumns, position / numColumns,
+                cellData.getColumnSpan(), cellData.getRowSpan());
+    }
+
+    private void occupy(CellData<T> cellData, boolean occupied) {
+        if (!fitsInGrid(cellData)) {
+            return;
+        }
+        int position = cellData.getPosition();
+        int col = position % numColumns;
+        int row = position / numColumns;
+        if (occupied) {
+            occupancyGrid.set(col, row, cellData.getColumnSpan(), cellData.getRowSpan());
+        } else {
+            occupancyGrid.clear(col, row, cellData.getColumnSpan(), cellData.getRowSpan());
+        }
+        int gridColumns = occupancyGrid.getNumColumns();
+        for (int r = row; r < row + cellData.getRowSpan(); r++) {
+            for (int c = col; c < col + cellData.getColumnSpan(); c++) {
+                slotOwners[r * gridColumns + c] = occupied ? position : POSITION_INVALID;
+            }
+        }
+    }
+
+    /**
+     * Adds the cell to cellMap at its position and marks its slots as occupied.
+     *
+     * @param cellData CellData
+     */
+    private void putCell(CellData<T> cellData) {
+        cellMap.put(cellData.getPosition(), cellData);
+        occupy(cellData, true);
+    }
+
+    /**
+     * Removes the cell from cellMap and marks its slots as vacant.
+     *
+     * @param cellData CellData
+     */
+    private void removeCell(CellData<T> cellData) {
+        if (cellMap.get(cellData.getPosition()) == cellData) {
+            cellMap.remove(cellData.getPosition());
+            occupy(cellData, false);
+        }
+    }
+
+    /**
+     * Returns the cell which occupies the view position, including
+     * the slots covered by spanning cells.
+     *
+     * @param position The view position
+     * @return CellData, or null if the position is vacant
+     */
+    private CellData<T> getCellAt(int position) {
+        CellData<T> cellData = cellMap.get(position);
+        if (cellData != null || position < 0 || numColumns <= 0) {
+            return cellData;
+        }
+        int col = position % numColumns;
+        int row = position / numColumns;
+        if (!occupancyGrid.contains(col, row, 1, 1)) {
+            return null;
+        }
+        int owner = slotOwners[row * occupancyGrid.getNumColumns() + col];
+        return owner != POSITION_INVALID ? cellMap.get(owner) : null;
+    }
+
+    /**
+     * Returns whether the cell can be placed at the position without
+     * overlapping other cells. The cell itself is not counted as an
+     * obstacle.
+     *
+     * @param cellData CellData
+     * @param position The view position for the top-left slot
+     * @return True if the cell can be placed. Otherwise false.
+     */
+    private boolean isVacantFor(CellData<T> cellData, int position) {
+        if (position < 0 || numColumns <= 0) {
+            return false;
+        }
+        boolean isOccupying = fitsInGrid(cellData) && cellMap.get(cellData.getPosition()) == cellData;
+        if (isOccupying) {
+            occupy(cellData, false);
+        }
+        boolean isVacant = occupancyGrid.isVacant(position % numColumns, position / numColumns,
+                cellData.getColumnSpan(), cellData.getRowSpan());
+        if (isOccupying) {
+            occupy(cellData, true);
+        }
+        return isVacant;
+    }
+
+    private int getCellViewWidth(CellData<T> cellData) {
+        return (int) (widthPerCell * cellData.getColumnSpan());
+    }
+
+    private int getCellViewHeight(CellData<T> cellData) {
+        return (int) (heightPerCell * cellData.getRowSpan());
+    }
+
+    /**
+     * Returns whether x,y is inside the drop area or not.
+     *
+     * @param x Pixels along the x-axis
+     * @param y Pixels along the y-axis
+     * @return True if x,y is inside the drop area. Otherwise false.
+     */
+    private boolean isInDropArea(float x, float y) {
+        return x >= paddingLeft
+                && x <= paddingLeft + widthPerCell * numColumns
+                && y >= editDropAreaTopPadding
+                && y <= topSpaceHeight - editDropAreaBottomPadding;
+    }
+
+    /**
+     * Returns the view position for x,y.
+     *
+     * @param x Pixels along the x-axis
+     * @param y Pixels along the y-axis
+     * @return The view position for x,y
+     */
+    private int getPositionForXY(float x, float y) {
+        if (isInDropArea(x, y)) {
+            return POSITION_DROP_AREA;
+        }
+        if (x < paddingLeft || y < paddingTop) {
+            return POSITION_INVALID;
+        }
+        int row = (int) ((y - paddingTop) / this.heightPerCell);
+        int col = (int) ((x - paddingLeft) / this.widthPerCell);
+        int position = row * this.numColumns + col;
+        if (col >= this.numColumns || position >= this.numColumns * this.numRows) {
+            position = POSITION_INVALID;
+        }
+        return position;
+    }
+
+    /**
+     * Returns Point(col, row) for x,y.
+     *
+     * @param x Pixels along the x-axis
+     * @param y Pixels along the y-axis
+     * @return Point(col, row) for x,y
+     */
+    private Point getColRowForXY(float x, float y) {
+        int position = getPositionForXY(x, y);
+        if (position == POSITION_INVALID || position == POSITION_DROP_AREA) {
+            return null;
+        }
+        int row = position / this.numColumns;
+        int col = position % this.numColumns;
+        return new Point(col, row);
+    }
+
+    /**
+     * Returns Point(x-pixels, y-pixels) for the view position.
+     *
+     * @param position The view position
+     * @return Point(x-pixels, y-pixels)
+     */
+    private Point getXYForPosition(int position) {
+        int row = position / this.numColumns;
+        int col = position % this.numColumns;
+        int x = (int) (paddingLeft + col * this.widthPerCell);
+        int y = (int) (paddingTop + row * this.heightPerCell);
+        return new Point(x, y);
+    }
+
+    /**
+     * Returns Point(x-pixels, y-pixels) for the column and row.
+     *
+     * @param col Column index (starts from zero)
+     * @param row Row index (starts from zero)
+     * @return Point(x-pixels, y-pixels) for the column and row
+     */
+    private Point getXYForColRow(int col, int row) {
+        int x = (int) (paddingLeft + col * this.widthPerCell);
+        int y = (int) (paddingTop + row * this.heightPerCell);
+        return new Point(x, y);
+    }
+
+    /**
+     * Sets DataProvider for this view.
+     *
+     * @param provider A DataProvider
+     */
+    public void setDataProvider(DataProvider<T> provider) {
+        this.provider = provider;
+        setupViews();
+    }
+
+    private void enableEditing() {
+        if (cellMap != null) {
+            // SparseArray version
+            for (int i = 0, l = cellMap.size(); i < l; i++) {
+                View view = cellMap.valueAt(i).getView();
+                if (view != null) {
+                    view.setLongClickable(true);
+                }
+            }
+        }
+    }
+
+    private void disableEditing() {
+        cancelEdit();
+
+        if (cellMap != null) {
+            // SparseArray version
+            for (int i = 0, l = cellMap.size(); i < l; i++) {
+                View view = cellMap.valueAt(i).getView();
+                if (view != null) {
+                    view.setLongClickable(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enable or disable edit mode.
+     *
+     * @param set To enable edit mode, true. To disable, false.
+     */
+    public void setEditable(boolean set) {
+        if (editable != set) {
+            editable = set;
+            if (editable) { // Enable editing
+                enableEditing();
+            } else { // Disable editing
+                disableEditing();
+            }
+        }
+    }
+
+    /**
+     * Returns whether cells are compacted automatically after a cell is deleted.
+     *
+     * @return True if auto compaction is enabled. Otherwise false.
+     */
+    public boolean isAutoCompact() {
+        return autoCompact;
+    }
+
+    /**
+     * Enable or disable auto compaction. If enabled, the gaps are closed
+     * with compact() every time a cell is deleted, and onReorder() is
+     * called only once for both the deletion and the compaction.
+     *
+     * @param set To enable auto compaction, true. To disable, false.
+     */
+    public void setAutoCompact(boolean set) {
+        autoCompact = set;
+    }
+
+    /**
+     * Returns the hold time after which moving the pointer on a cell starts dragging.
+     *
+     * @return The time in milliseconds, or a negative value if dragging starts only by long click
+     */
+    public int getDragStartDelay() {
+        return dragStartDelay;
+    }
+
+    /**
+     * Lets the user start dragging a cell without waiting for the long press
+     * timeout. While edit mode is enabled, dragging starts when the pointer
+     * moves farther than the drag start slop after the cell has been held
+     * for the delay. If the pointer moves earlier, it is treated as a normal
+     * touch. Clicks and long clicks work as before.
+     *
+     * @param dragStartDelay The hold time in milliseconds (e.g. 0 or 100), or
+     *                       a negative value to start dragging only by long click
+     */
+    public void setDragStartDelay(int dragStartDelay) {
+        this.dragStartDelay = dragStartDelay;
+    }
+
+    /**
+     * Sets the distance the pointer must move on a cell to start dragging.
+     * The default is the system touch slop.
+     *
+     * @param dragStartSlop Pixels
+     */
+    public void setDragStartSlop(float dragStartSlop) {
+        this.dragStartSlop = dragStartSlop;
+    }
+
+    /**
+     * Returns the time from ACTION_DOWN to the first frame on which the dragged
+     * cell moved, for the last drag. This is useful for measuring the drag start
+     * latency.
+     *
+     * @return The time in milliseconds, or -1 if no drag has moved yet
+     */
+    public long getDragStartLatency() {
+        return dragStartLatency;
+    }
+
+    /**
+     * Returns whether touch prediction is enabled or not.
+     *
+     * @return True if touch prediction is enabled. Otherwise false.
+     */
+    public boolean isTouchPredictionEnabled() {
+        return touchPredictor != null;
+    }
+
+    /**
+     * Enable or disable touch prediction. If enabled, the dragged cell is drawn
+     * where the pointer is expected to be when the frame is displayed, based
+     * on the recent pointer velocity. The predicted offset is smoothed and
+     * limited to half a cell. The drop target and swap candidates are still
+     * decided by the actual pointer position.
+     *
+     * @param set To enable touch prediction, true. To disable, false.
+     */
+    public void setTouchPredictionEnabled(boolean set) {
+        if (set && touchPredictor == null) {
+            touchPredictor = new TouchPredictor(16, widthPerCell / 2);
+        } else if (!set) {
+            touchPredictor = null;
+        }
+    }
+
+    /**
+     * Sets how far ahead touch prediction looks. The default is 16 ms.
+     *
+     * @param predictionTime The time in milliseconds, usually the display latency
+     */
+    public void setTouchPredictionTime(long predictionTime) {
+        if (touchPredictor != null) {
+            touchPredictor.setPredictionTime(predictionTime);
+        }
+    }
+
+    /**
+     * Enable or disable selection mode. While selection mode is enabled,
+     * clicking a cell toggles its selection instead of calling
+     * OnCellClickListener, and long-clicking a selected cell drags all
+     * selected cells together.
+     *
+     * @param set To enable selection mode, true. To disable, false.
+     */
+    public void setSelectionMode(boolean set) {
+        if (selectionMode != set) {
+            selectionMode = set;
+            if (!selectionMode) {
+                clearSelection();
+            }
+        }
+    }
+
+    /**
+     * Returns whether selection mode is enabled or not.
+     *
+     * @return True if selection mode is enabled. Otherwise false.
+     */
+    public boolean isSelectionMode() {
+        return selectionMode;
+    }
+
+    /**
+     * Selects or deselects the cell for the object.
+     *
+     * @param object Object representing a cell
+     * @param select To select the cell, true. To deselect, false.
+     */
+    public void setObjectSelected(T object, boolean select) {
+        CellData<T> cellData = findCellData(object);
+        if (cellData == null) {
+            Log.w(TAG, "setObjectSelected: object is not in this view");
+            return;
+        }
+        setCellSelected(cellData, select);
+    }
+
+    /**
+     * Returns the objects for the selected cells.
+     *
+     * @return The selected objects in the order they were selected
+     */
+    public List<T> getSelectedObjects() {
+        ArrayList<T> objects = new ArrayList<>(selectedCells.size());
+        for (int i = 0, l = selectedCells.size(); i < l; i++) {
+            objects.add(selectedCells.get(i).getObject());
+        }
+        return objects;
+    }
+
+    /**
+     * Deselects all cells.
+     */
+    public void clearSelection() {
+        for (int i = 0, l = selectedCells.size(); i < l; i++) {
+            View cellView = selectedCells.get(i).getView();
+            if (cellView != null) {
+                cellView.setSelected(false);
+            }
+        }
+        selectedCells.clear();
+    }
+
+    private void setCellSelected(CellData<T> cellData, boolean select) {
+        if (cellData.getView() == null) { // hidden
+            return;
+        }
+        if (select) {
+            if (!selectedCells.contains(cellData)) {
+                selectedCells.add(cellData);
+            }
+        } else {
+            selectedCells.remove(cellData);
+        }
+        cellData.getView().setSelected(select);
+    }
+
+    private void onCellClick(CellData<T> cellData) {
+        if (selectionMode) {
+            setCellSelected(cellData, !selectedCells.contains(cellData));
+        } else if (onCellClickListener != null) {
+            onCellClickListener.onClick(cellData);
+        }
+    }
+
+    /**
+     * Creates and adds cell views using DataProvider.
+     */
+    private void setupViews() {
+        SparseArray<CellData<T>> oldCellMap = cellMap;
+        LongSparseArray<CellData<T>> oldIdMap = idMap;
+        boolean hasStableIds = this.provider instanceof StableIdDataProvider;
+        boolean hasSpans = this.provider instanceof SpanDataProvider;
+        cellMap = new SparseArray<>();
+        occupancyGrid.clearAll();
+        Arrays.fill(slotOwners, POSITION_INVALID);
+        idMap = hasStableIds ? new LongSparseArray<CellData<T>>() : null;
+        dirtyCells.clear();
+        selectedCells.clear();
+        clearPrefetchedViews();
+        IdentityHashMap<CellData<T>, Object> oldLiveValues = null;
+        if (!liveValues.isEmpty()) {
+            oldLiveValues = liveValues;
+            liveValues = new IdentityHashMap<>();
+        }
+        liveValueCells.clear();
+        labelIndex = null;
+        unboundCells.clear();
+        populationIndex = 0;
+        isPopulationSorted = false;
+        Iterator<T> iter = this.provider.iterator();
+        if (labelLayoutCache != null && this.provider instanceof LabelDataProvider) {
+            // Build label layouts in the background while the cells are being bound
+            LabelDataProvider<T> labelDataProvider = (LabelDataProvider<T>) this.provider;
+            ArrayList<T> items = new ArrayList<>();
+            while (iter.hasNext()) {
+                T item = iter.next();
+                items.add(item);
+                int columnSpan = hasSpans ? ((SpanDataProvider<T>) this.provider).getColumnSpan(item) : 1;
+                labelLayoutCache.prefetch(labelDataProvider.getLabel(item), columnSpan);
+            }
+            iter = items.iterator();
+        }
+        boolean isAltered = false;
+        while (iter.hasNext()) {
+            T item = iter.next();
+
+            // Reuse the cell which has the same item id
+            CellData<T> reusableCellData = null;
+            long itemId = 0;
+            if (hasStableIds) {
+                itemId = ((StableIdDataProvider<T>) this.provider).getItemId(item);
+                if (oldIdMap != null) {
+                    reusableCellData = oldIdMap.get(itemId);
+                    if (reusableCellData != null) {
+                        oldIdMap.remove(itemId);
+                        oldCellMap.remove(reusableCellData.getPosition());
+                    }
+                }
+            }
+            View existingView = reusableCellData != null ? reusableCellData.getView() : null;
+            if (existingView == null) {
+                reusableCellData = null; // hidden cells have no view to reuse
+            }
+
+            int position = this.provider.getViewPosition(item);
+            if (position == POSITION_INVALID) {
+                if (reusableCellData != null) {
+                    recycleCellView(existingView);
+                }
+                continue;
+            }
+            int columnSpan = 1;
+            int rowSpan = 1;
+            if (hasSpans) {
+                columnSpan = Math.max(1, ((SpanDataProvider<T>) this.provider).getColumnSpan(item));
+                rowSpan = Math.max(1, ((SpanDataProvider<T>) this.provider).getRowSpan(item));
+            }
+
+            // check validity of position
+            if (!isPositionAvailable(position, columnSpan, rowSpan)) {
+                int altPosition = occupancyGrid.findFirstFit(columnSpan, rowSpan);
+                if (altPosition == POSITION_INVALID || altPosition == POSITION_DROP_AREA) {
+                    Log.e(TAG, "No available position for overlapping position: " + position);
+                    if (reusableCellData != null) {
+                        recycleCellView(existingView);
+                    }
+                    continue;
+                }
+                Log.w(TAG, "Assigned new position " + altPosition + " for overlapped position " + position);
+                writeViewPosition(item, POSITION_INVALID, altPosition);
+                position = altPosition;
+                isAltered = true;
+            }
+
+            // Cells outside the grid are not bound until they become visible. Before the
+            // first layout the grid is not known, and layoutComponents() creates the views.
+            boolean isHidden = widthPerCell <= 0 ? !isProgressivePopulationEnabled : (numColumns <= 0
+                    || !occupancyGrid.contains(position % numColumns, position / numColumns, columnSpan, rowSpan));
+            View cellView = null;
+            if (isHidden) {
+                if (reusableCellData != null) {
+                    recycleCellView(existingView);
+                    reusableCellData = null;
+                }
+            } else if (existingView == null && isProgressivePopulationEnabled) {
+                // Bound later by populateCells()
+                CellData<T> cellData = new CellData<>(null, position, item);
+                cellData.setSpans(columnSpan, rowSpan);
+                putCell(cellData);
+                if (hasStableIds) {
+                    idMap.put(itemId, cellData);
+                }
+                unboundCells.add(cellData);
+                continue;
+            } else {
+                cellView = this.provider.getView(existingView, item);
+                if (existingView != null && cellView != existingView) {
+                    recycleCellView(existingView);
+                    reusableCellData = null;
+                }
+                if (cellView == null) {
+                    continue;
+                }
+            }
+
+            if (reusableCellData != null) {
+                // Keep the view and animate it to the new position
+                reusableCellData.setObject(item);
+                int oldPosition = reusableCellData.getPosition();
+                boolean isResized = reusableCellData.getColumnSpan() != columnSpan
+                        || reusableCellData.getRowSpan() != rowSpan;
+                reusableCellData.setSpans(columnSpan, rowSpan);
+                reusableCellData.setPosition(position);
+                if (widthPerCell > 0 && fitsInGrid(reusableCellData)) {
+                    if (isResized) {
+                        layoutCellView(reusableCellData);
+                    } else if (oldPosition != position) {
+                        moveCellView(reusableCellData, position);
+                    }
+                }
+                putCell(reusableCellData);
+                idMap.put(itemId, reusableCellData);
+                continue;
+            }
+
+            CellData<T> cellData = new CellData<>(cellView, position, item);
+            cellData.setSpans(columnSpan, rowSpan);
+            if (cellView != null) {
+                addView(cellView);
+                setupCellView(cellData);
+                applyFilter(cellData);
+                fadeInCellView(cellData);
+            }
+            putCell(cellData);
+            if (hasStableIds) {
+                idMap.put(itemId, cellData);
+            }
+            if (cellView != null && widthPerCell > 0) { // already laid out
+                layoutCellView(cellData);
+            }
+        }
+
+        // Remove the views of the previous DataProvider which were not reused
+        if (oldCellMap != null) {
+            for (int i = 0, l = oldCellMap.size(); i < l; i++) {
+                View oldView = oldCellMap.valueAt(i).getView();
+                if (oldView != null) {
+                    recycleCellView(oldView);
+                }
+            }
+        }
+
+        if (isAltered) {
+            notifyReorder();
+        }
+        if (isFiltering()) {
+            applyFilter();
+        }
+        if (oldLiveValues != null) {
+            restoreLiveValues(oldLiveValues, hasStableIds);
+        }
+        if (!unboundCells.isEmpty()) {
+            schedulePopulation();
+        } else if (widthPerCell > 0) { // otherwise the views are created on the first layout
+            startSnapshotFade();
+            schedulePrefetch();
+        }
+        invalidate();
+    }
+
+    /**
+     * Tags the cell view with its CellData and sets click and long click
+     * listeners.
+     *
+     * @param cellData CellData for the cell
+     */
+    private void setupCellView(CellData<T> cellData) {
+        View cellView = cellData.getView();
+        cellView.setTag(R.id.pigeonhole_view__cell_data, cellData);
+        cellView.setClickable(true);
+        cellView.setOnClickListener(cellViewListener);
+        cellView.setOnLongClickListener(cellViewListener);
+        cellView.setLongClickable(editable);
+    }
+
+    /**
+     * Returns CellData which holds the cell view. Cell views carry their
+     * CellData in a keyed tag, so the lookup does not depend on where the
+     * view is laid out.
+     *
+     * @param cellView Cell view
+     * @return CellData, or null if the view does not belong to any cell
+     */
+    @SuppressWarnings("unchecked")
+    private CellData<T> findCellDataForView(View cellView) {
+        Object tag = cellView.getTag(R.id.pigeonhole_view__cell_data);
+        if (tag instanceof CellData && ((CellData<T>) tag).getView() == cellView) {
+            return (CellData<T>) tag;
+        }
+        return null;
+    }
+
+    /**
+     * Measures and lays out the cell view at the position of the cell.
+     *
+     * @param cellData CellData
+     */
+    private void layoutCellView(CellData<T> cellData) {
+        View cellView = cellData.getView();
+        if (cellView == null) {
+            return;
+        }
+        Point cellPoint = getXYForPosition(cellData.getPosition());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // Discard the offset left by animations
+            cellView.setTranslationX(0);
+            cellView.setTranslationY(0);
+        }
+        cellView.measure(getCellViewWidth(cellData), getCellViewHeight(cellData));
+        cellView.layout(
+                cellPoint.x,
+                cellPoint.y,
+                cellPoint.x + getCellViewWidth(cellData),
+                cellPoint.y + getCellViewHeight(cellData)
+        );
+    }
+
+    /**
+     * Returns whether a new cell can be placed at the position or not.
+     * Positions outside the grid are available unless another cell has
+     * the same position.
+     *
+     * @param position   The view position for the top-left slot
+     * @param columnSpan The number of columns
+     * @param rowSpan    The number of rows
+     * @return True if the position is available. Otherwise false.
+     */
+    private boolean isPositionAvailable(int position, int columnSpan, int rowSpan) {
+        if (cellMap.get(position) != null) {
+            return false;
+        }
+        if (numColumns <= 0) {
+            return true;
+        }
+        int col = position % numColumns;
+        int row = position / numColumns;
+        if (occupancyGrid.contains(col, row, columnSpan, rowSpan)) {
+            return occupancyGrid.isVacant(col, row, columnSpan, rowSpan);
+        }
+        return !occupancyGrid.isOccupied(col, row);
+    }
+
+    /**
+     * Animates the cell view to the position.
+     *
+     * @param cellData CellData
+     * @param position The view position
+     */
+    private void moveCellView(CellData<T> cellData, int position) {
+        View cellView = cellData.getView();
+        Point newPoint = getXYForPosition(position);
+        if (cellView == null || newPoint == null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            AnimatorSet animatorSet = new AnimatorSet();
+            ObjectAnimator animX = ObjectAnimator.ofFloat(cellView, "x", newPoint.x);
+            ObjectAnimator animY = ObjectAnimator.ofFloat(cellView, "y", newPoint.y);
+            animatorSet.playTogether(animX, animY);
+            startAnimator(animatorSet);
+        } else {
+            cellView.layout(
+                    newPoint.x,
+                    newPoint.y,
+                    newPoint.x + getCellViewWidth(cellData),
+                    newPoint.y + getCellViewHeight(cellData)
+            );
+        }
+    }
+
+    private int getMinimumVacantPositionWithoutUpperLimit() {
+        return getMinimumVacantPositionWithoutUpperLimit(0);
+    }
+
+    /**
+     * Returns the minimum position from start which is not the top-left
+     * position of a cell. Slots covered by spanning cells are not checked,
+     * so within the grid use OccupancyGrid instead.
+     *
+     * @param start The position to start from
+     * @return The vacant position
+     */
+    private int getMinimumVacantPositionWithoutUpperLimit(int start) {
+        for (int i = start; ; i++) {
+            if (cellMap.get(i) == null) {
+                return i;
+            }
+        }
+    }
+
+    private int getMinimumVacantPosition() {
+        if (widthPerCell <= 0) { // the grid shape is not known yet
+            return getMinimumVacantPositionWithoutUpperLimit();
+        }
+        return occupancyGrid.findFirstFit(1, 1);
+    }
+
+    /**
+     * Checks whether the matrix is full. Cells cannot be added
+     * if the matrix is full. Before the view is laid out for the first
+     * time the matrix is never full; cells which do not fit are moved to
+     * vacant positions when the grid is known.
+     *
+     * @return True if the matrix is full. Otherwise false.
+     */
+    public boolean isFull() {
+        return getMinimumVacantPosition() == POSITION_INVALID;
+    }
+
+    /**
+     * Adds a cell to this view. You can use this method to dynamically
+     * add a cell. The view position will be automatically assigned.
+     * If there is no view position available, it assigns invisible
+     * (above the maximum) view position. If getView() returns null for
+     * a cell in the grid, the object is not added and a warning is logged.
+     *
+     * @param object Object representing a cell
+     */
+    public void addObject(T object) {
+        int columnSpan = 1;
+        int rowSpan = 1;
+        if (this.provider instanceof SpanDataProvider) {
+            columnSpan = Math.max(1, ((SpanDataProvider<T>) this.provider).getColumnSpan(object));
+            rowSpan = Math.max(1, ((SpanDataProvider<T>) this.provider).getRowSpan(object));
+        }
+        int position;
+        if (widthPerCell <= 0) {
+            // Overlapping spans are resolved on the first layout
+            position = getMinimumVacantPositionWithoutUpperLimit();
+        } else {
+            position = occupancyGrid.findFirstFit(columnSpan, rowSpan);
+            if (position == -1) {
+                // Slots in the grid may be covered by spanning cells, so look above it
+                position = getMinimumVacantPositionWithoutUpperLimit(getMaxPosition() + 1);
+                Log.w(TAG, "Assigning a position above upper limit: " + position);
+            }
+        }
+        if (this.provider == null) {
+            throw new IllegalStateException("DataProvider is null");
+        }
+        CellData<T> cellData = new CellData<>(null, position, object);
+        cellData.setSpans(columnSpan, rowSpan);
+        // Cells outside the grid, or added before the first layout, are bound when they are shown
+        if (widthPerCell > 0 && fitsInGrid(cellData)) {
+            View cellView = this.provider.getView(null, object);
+            if (cellView == null) {
+                Log.w(TAG, "addObject: getView() returned null; the object is not added");
+                return;
+            }
+            cellData.setView(cellView);
+            setupCellView(cellData);
+            addView(cellView);
+        }
+        writeViewPosition(object, POSITION_INVALID, position);
+        notifyReorder();
+
+        putCell(cellData);
+        if (idMap != null) {
+            idMap.put(((StableIdDataProvider<T>) this.provider).getItemId(object), cellData);
+        }
+        if (labelIndex != null) {
+            labelIndex.add(cellData, getLabel(object));
+        }
+        if (isFiltering()) {
+            boolean isMatched = matchesFilter(cellData);
+            cellData.setFilterMatched(isMatched);
+            if (isMatched) {
+                filterMatchCount++;
+            }
+            applyFilter(cellData);
+        }
+        if (cellData.getView() != null) {
+            layoutCellView(cellData);
+            invalidate();
+        }
+    }
+
+    /**
+     * Removes a cell from this view.
+     *
+     * @param cellData CellData that will be removed
+     */
+    private void deleteCell(CellData<T> cellData) {
+        if (cellData == null) {
+            Log.e(TAG, "deleteCell: cellData is null");
+            return;
+        }
+        recordRemoval(cellData);
+        removeCell(cellData);
+        removePrefetchedView(cellData);
+        removeLiveValue(cellData);
+        if (isFiltering() && cellData.isFilterMatched()) {
+            filterMatchCount--;
+        }
+        if (labelIndex != null) {
+            labelIndex.remove(cellData);
+        }
+        selectedCells.remove(cellData);
+        if (idMap != null) {
+            int index = idMap.indexOfValue(cellData);
+            if (index >= 0) {
+                idMap.removeAt(index);
+            }
+        }
+        if (cellData.getPosition() == editingPosition) {
+            // Otherwise the cell moved into this position would be put back later
+            editingPosition = POSITION_INVALID;
+        }
+        if (autoCompact && !isDragging) {
+            compactCells();
+        }
+
+        notifyReorder();
+
+        final View cellView = cellData.getView();
+        if (cellView == null) { // the cell was outside the grid
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            AnimatorSet animatorSet = new AnimatorSet();
+
+            // shrink
+            ObjectAnimator animScaleX = ObjectAnimator.ofFloat(cellView, "scaleX", 0f);
+            ObjectAnimator animScaleY = ObjectAnimator.ofFloat(cellView, "scaleY", 0f);
+
+            // fade out
+            ObjectAnimator animFadeOut = ObjectAnimator.ofFloat(cellView, "alpha", 1f, 0f);
+            animatorSet.playTogether(animScaleX, animScaleY, animFadeOut);
+            animatorSet.addListener(new Animator.AnimatorListener() {
+                @Override
+                public void onAnimationStart(Animator animator) {
+                }
+
+                @Override
+                public void onAnimationEnd(Animator animator) {
+                    recycleCellView(cellView);
+                }
+
+                @Override
+                public void onAnimationCancel(Animator animator) {
+                }
+
+                @Override
+                public void onAnimationRepeat(Animator animator) {
+                }
+            });
+            startAnimator(animatorSet);
+        } else {
+            recycleCellView(cellView);
+        }
+    }
+
+    /**
+     * Removes the cell view which is no longer used.
+     *
+     * @param cellView The cell view
+     */
+    private void recycleCellView(View cellView) {
+        if (imageLoader != null) {
+            imageLoader.cancelAll(cellView);
+        }
+        removeView(cellView);
+    }
+
+    private void deleteHoveringObject() {
+        deleteCell(hoverCellData);
+    }
+
+    private void editHoveringObject() {
+        if (hoverCellData != null) {
+            editingPosition = hoverCellData.getPosition();
+            T cellInfo = hoverCellData.getObject();
+            if (listener != null) {
+                listener.onEditObject(cellInfo);
+            }
+        }
+    }
+
+    /**
+     * Removes the currently editing cell from this view.
+     */
+    public void deleteEditingObject() {
+        CellData<T> cellData = cellMap.get(editingPosition);
+        if (cellData != null) {
+            deleteCell(cellData);
+        }
+
+        if (listener != null) {
+            listener.onDragEnd();
+        }
+    }
+
+    private void putBackEditingCellView() {
+        if (editingPosition != POSITION_INVALID) {
+            CellData<T> cellData = cellMap.get(editingPosition);
+            View cellView = cellData != null ? cellData.getView() : null;
+            if (cellView != null && !fitsInGrid(cellData)) {
+                // The grid has shrunk during the edit
+                detachCellView(cellData);
+            } else if (cellView != null) {
+                Point destXY = getXYForPosition(editingPosition);
+                if (destXY != null) {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                        cellView.setScaleX(1.0f);
+                        cellView.setScaleY(1.0f);
+                        cellView.setX(destXY.x);
+                        cellView.setY(destXY.y);
+
+                        // Fade in the cell
+                        AnimatorSet animatorSet = new AnimatorSet();
+                        ObjectAnimator animFadeIn = ObjectAnimator.ofFloat(cellView, "alpha", 0f, getFilterAlpha(cellData));
+                        animatorSet.play(animFadeIn);
+                        startAnimator(animatorSet);
+                    } else {
+                        cellView.layout(
+                                destXY.x,
+                                destXY.y,
+                                destXY.x + getCellViewWidth(cellData),
+                                destXY.y + getCellViewHeight(cellData)
+                        );
+                    }
+                    invalidate();
+                }
+            }
+            editingPosition = POSITION_INVALID;
+        }
+    }
+
+    /**
+     * Cancels the ongoing edit.
+     */
+    public void cancelEdit() {
+        putBackEditingCellView();
+
+        if (listener != null) {
+            listener.onDragEnd();
+        }
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Bundle bundle = new Bundle();
+        bundle.putInt("editingPosition", editingPosition);
+        if (idMap != null) {
+            CellData<T> editingCellData = editingPosition != POSITION_INVALID ? cellMap.get(editingPosition) : null;
+            if (editingCellData != null) {
+                bundle.putLong("editingItemId", getItemId(editingCellData));
+            }
+            long[] selectedItemIds = new long[selectedCells.size()];
+            for (int i = 0; i < selectedItemIds.length; i++) {
+                selectedItemIds[i] = getItemId(selectedCells.get(i));
+            }
+            bundle.putLongArray("selectedItemIds", selectedItemIds);
+        }
+        bundle.putParcelable("superState", super.onSaveInstanceState());
+        return bundle;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (state instanceof Bundle) {
+            Bundle bundle = (Bundle) state;
+            editingPosition = bundle.getInt("editingPosition", POSITION_INVALID);
+            if (idMap != null) {
+                // Positions may have been changed since the state was saved
+                if (bundle.containsKey("editingItemId")) {
+                    CellData<T> editingCellData = idMap.get(bundle.getLong("editingItemId"));
+                    editingPosition = editingCellData != null ? editingCellData.getPosition() : POSITION_INVALID;
+                }
+                long[] selectedItemIds = bundle.getLongArray("selectedItemIds");
+                if (selectedItemIds != null) {
+                    for (long selectedItemId : selectedItemIds) {
+                        CellData<T> selectedCellData = idMap.get(selectedItemId);
+                        if (selectedCellData != null) {
+                            setCellSelected(selectedCellData, true);
+                        }
+                    }
+                }
+            }
+            Parcelable superState = bundle.getParcelable("superState");
+            super.onRestoreInstanceState(superState);
+        } else {
+            Log.e(TAG, "state is not an instance of Bundle");
+        }
+    }
+
+    /**
+     * Updates the view using DataProvider.
+     */
+    public void notifyDataSetChanged() {
+        invalidate();
+    }
+
+    /**
+     * Returns CellData for the object.
+     *
+     * @param object Object representing a cell
+     * @return CellData for the object, or null if the object is not in this view
+     */
+    private CellData<T> findCellData(T object) {
+        if (cellMap == null) {
+            return null;
+        }
+        if (idMap != null) {
+            CellData<T> cellData = idMap.get(((StableIdDataProvider<T>) this.provider).getItemId(object));
+            if (cellData != null) {
+                return cellData;
+            }
+        }
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            if (cellData.getObject() == object) {
+                return cellData;
+            }
+        }
+        return null;
+    }
+
+    private long getItemId(CellData<T> cellData) {
+        return ((StableIdDataProvider<T>) this.provider).getItemId(cellData.getObject());
+    }
+
+    /**
+     * Rebinds the whole cell view for the object on the next frame.
+     *
+     * @param object Object representing a cell
+     */
+    public void notifyObjectChanged(T object) {
+        notifyObjectChanged(object, null);
+    }
+
+    /**
+     * Updates the cell view for the object on the next frame. If DataProvider
+     * implements PartialBindDataProvider, only the parts described by payload
+     * are updated via bindPartial(). Payloads for the same cell that are passed
+     * within a frame are merged into a single bind. If payload is null, the
+     * whole cell view is rebound via getView().
+     *
+     * @param object  Object representing a cell
+     * @param payload Describes which part of the cell has been changed, or null
+     */
+    public void notifyObjectChanged(T object, Object payload) {
+        CellData<T> cellData = findCellData(object);
+        if (cellData == null) {
+            Log.w(TAG, "notifyObjectChanged: object is not in this view");
+            return;
+        }
+        updateLabel(cellData, object);
+        if (cellData.getView() == null) {
+            // The cell is outside the grid; its view will be created with the new data
+            removePrefetchedView(cellData);
+            return;
+        }
+        if (payload == null) {
+            cellData.setFullBindPending(true);
+        } else {
+            if (cellData.pendingPayloads == null) {
+                cellData.pendingPayloads = new ArrayList<>();
+            }
+            cellData.pendingPayloads.add(payload);
+        }
+        if (!dirtyCells.contains(cellData)) {
+            dirtyCells.add(cellData);
+        }
+        if (!isBindScheduled) {
+            isBindScheduled = true;
+            ViewCompat.postOnAnimation(this, bindRunnable);
+        }
+    }
+
+    /**
+     * Indexes the label of the changed object again, and updates the filter
+     * state of the cell if a filter is set.
+     *
+     * @param cellData CellData of the object
+     * @param object   The changed object
+     */
+    private void updateLabel(CellData<T> cellData, T object) {
+        if (isFiltering()) {
+            // The object may have been changed in place, so the previous result is taken from the cell
+            boolean wasMatched = cellData.isFilterMatched();
+            cellData.setObject(object);
+            if (labelIndex != null) {
+                labelIndex.add(cellData, getLabel(object));
+            }
+            boolean isMatched = matchesFilter(cellData);
+            cellData.setFilterMatched(isMatched);
+            if (wasMatched != isMatched) {
+                filterMatchCount += isMatched ? 1 : -1;
+            }
+            applyFilter(cellData);
+        } else if (labelIndex != null) {
+            labelIndex.add(cellData, getLabel(object));
+        }
+    }
+
+    /**
+     * Binds the cell view using the pending payloads of the cell.
+     *
+     * @param cellData CellData that will be bound
+     */
+    private void bindCell(CellData<T> cellData) {
+        if (this.provider == null) {
+            throw new IllegalStateException("DataProvider is null");
+        }
+        if (cellData.getView() == null) { // hidden cells are bound when they are attached
+            cellData.setFullBindPending(false);
+            cellData.pendingPayloads = null;
+            return;
+        }
+        if (cellData.isFullBindPending() || cellData.pendingPayloads == null
+                || !(this.provider instanceof PartialBindDataProvider)) {
+            this.provider.getView(cellData.getView(), cellData.getObject());
+            applyLiveValue(cellData);
+        } else {
+            ((PartialBindDataProvider<T>) this.provider).bindPartial(
+                    cellData.getView(), cellData.getObject(), cellData.pendingPayloads);
+        }
+        cellData.setFullBindPending(false);
+        cellData.pendingPayloads = null;
+    }
+
+    /**
+     * Binds all cells which have been changed since the last frame.
+     */
+    private void bindDirtyCells() {
+        for (int i = 0, l = dirtyCells.size(); i < l; i++) {
+            CellData<T> cellData = dirtyCells.get(i);
+            if (cellMap.get(cellData.getPosition()) == cellData) { // still in this view
+                bindCell(cellData);
+            }
+        }
+        dirtyCells.clear();
+        invalidate();
+    }
+
+    /**
+     * Updates the view for the cell which is being edited.
+     */
+    public void updateEditingObject() {
+        updateEditingObject(null);
+    }
+
+    /**
+     * Updates the view for the cell which is being edited. If DataProvider
+     * implements PartialBindDataProvider and payload is not null, only the
+     * parts described by payload are updated.
+     *
+     * @param payload Describes which part of the cell has been changed, or null
+     */
+    public void updateEditingObject(Object payload) {
         if (editingPosition != POSITION_INVALID) {
             CellData<T> cellData = cellMap.get(editingPosition);
             if (cellData != null) {
-                View cellView = cellData.getView();
+                updateLabel(cellData, cellData.getObject());
+                // Update contents of the view
+                if (payload == null) {
+                    cellData.setFullBindPending(true);
+                } else {
+                    if (cellData.pendingPayloads == null) {
+                        cellData.pendingPayloads = new ArrayList<>();
+                    }
+                    cellData.pendingPayloads.add(payload);
+                }
+                bindCell(cellData);
+                dirtyCells.remove(cellData);
+
+                invalidate();
+            } else {
+                Log.e(TAG, "No data at editingPosition");
+            }
+        }
+
+        putBackEditingCellView();
+
+        if (listener != null) {
+            listener.onDragEnd();
+        }
+    }
+
+    /**
+     * Moves the cell to the new position.
+     *
+     * @param cellData    CellData that will be moved
+     * @param newPosition The new position for the cell
+     */
+    private void moveCell(CellData<T> cellData, int newPosition) {
+        Point newPoint = getXYForPosition(newPosition);
+        if (newPoint == null) {
+            Log.e(TAG, "moveCell: Invalid position is specified: " + newPosition);
+            return;
+        }
+
+        // Move the cell to newPosition
+        View cellView = cellData.getView();
+        if (cellView != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                AnimatorSet animatorSet = new AnimatorSet();
+                ObjectAnimator animX = ObjectAnimator.ofFloat(cellView, "x", newPoint.x);
+                ObjectAnimator animY = ObjectAnimator.ofFloat(cellView, "y", newPoint.y);
+                animatorSet.playTogether(animX, animY);
+                startAnimator(animatorSet);
+            } else {
+                cellView.layout(
+                        newPoint.x,
+                        newPoint.y,
+                        newPoint.x + getCellViewWidth(cellData),
+                        newPoint.y + getCellViewHeight(cellData)
+                );
+            }
+        }
+
+        int oldPosition = cellData.getPosition();
+        removeCell(cellData);
+        cellData.setPosition(newPosition);
+        putCell(cellData);
+        if (cellView == null && fitsInGrid(cellData)) { // coming back from outside the grid
+            attachCellView(cellData);
+            layoutCellView(cellData);
+        }
+
+        T object = cellData.getObject();
+        if (this.provider == null) {
+            throw new IllegalStateException("DataProvider is null");
+        }
+        writeViewPosition(object, oldPosition, newPosition);
+    }
+
+    /**
+     * Moves the cells to the new positions at once. All cells are animated
+     * in a single AnimatorSet and DataProvider is notified once per cell.
+     * The new positions must not be occupied by any cell other than the
+     * given ones.
+     *
+     * @param cells        CellData list that will be moved
+     * @param newPositions The new position for each cell
+     */
+    private void moveCells(List<CellData<T>> cells, int[] newPositions) {
+        if (this.provider == null) {
+            throw new IllegalStateException("DataProvider is null");
+        }
+        int count = cells.size();
+        int editingIndex = -1;
+        for (int i = 0; i < count; i++) {
+            if (cells.get(i).getPosition() == editingPosition) {
+                editingIndex = i;
+            }
+            removeCell(cells.get(i));
+        }
+        if (editingIndex >= 0) {
+            editingPosition = newPositions[editingIndex];
+        }
+
+        ArrayList<Animator> animators = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CellData<T> cellData = cells.get(i);
+            int newPosition = newPositions[i];
+            int oldPosition = cellData.getPosition();
+            cellData.setPosition(newPosition);
+            putCell(cellData);
+            writeViewPosition(cellData.getObject(), oldPosition, newPosition);
+
+            if (!fitsInGrid(cellData)) {
+                continue;
+            }
+            if (cellData.getView() == null) { // coming back from outside the grid
+                attachCellView(cellData);
+                if (cellData.getView() != null) {
+                    layoutCellView(cellData);
+                }
+                continue;
+            }
+            Point newPoint = getXYForPosition(newPosition);
+            View cellView = cellData.getView();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                animators.add(ObjectAnimator.ofFloat(cellView, "x", newPoint.x));
+                animators.add(ObjectAnimator.ofFloat(cellView, "y", newPoint.y));
+                animators.add(ObjectAnimator.ofFloat(cellView, "scaleX", 1.0f));
+                animators.add(ObjectAnimator.ofFloat(cellView, "scaleY", 1.0f));
+            } else {
+                cellView.layout(
+                        newPoint.x,
+                        newPoint.y,
+                        newPoint.x + getCellViewWidth(cellData),
+                        newPoint.y + getCellViewHeight(cellData)
+                );
+            }
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && !animators.isEmpty()) {
+            AnimatorSet animatorSet = new AnimatorSet();
+            animatorSet.playTogether(animators);
+            startAnimator(animatorSet);
+        }
+        invalidate();
+    }
+
+    /**
+     * Closes the gaps between cells by moving them to the minimum vacant
+     * positions in reading order. All moves are animated at once and
+     * onReorder() is called only once. This does nothing while a cell is
+     * being dragged.
+     *
+     * @return The number of cells moved
+     */
+    public int compact() {
+        if (isDragging) {
+            Log.w(TAG, "compact: cannot compact while dragging");
+            return 0;
+        }
+        int count = compactCells();
+        if (count > 0) {
+            notifyReorder();
+        }
+        return count;
+    }
+
+    /**
+     * Computes the dense layout and moves the cells without calling onReorder().
+     * Cells are placed in the order of their current positions at the first
+     * slot where they fit. Cells that do not fit anywhere keep being hidden
+     * above the maximum position.
+     *
+     * @return The number of cells moved
+     */
+    private int compactCells() {
+        if (cellMap == null || cellMap.size() == 0) {
+            return 0;
+        }
+        // cellMap is sorted by position, so this iterates in reading order
+        OccupancyGrid packedGrid = new OccupancyGrid(numColumns, numRows);
+        int count = cellMap.size();
+        int[] packedPositions = new int[count];
+        int nextHiddenPosition = getMaxPosition() + 1;
+        for (int i = 0; i < count; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            int position = packedGrid.findFirstFit(cellData.getColumnSpan(), cellData.getRowSpan());
+            if (position == POSITION_INVALID) {
+                if (fitsInGrid(cellData)) { // packing order left no room for this cell
+                    Log.w(TAG, "compact: no room for the cell at " + cellData.getPosition());
+                    return 0;
+                }
+                // Keep hidden cells after the grid in the same order
+                position = Math.max(cellData.getPosition(), nextHiddenPosition);
+                nextHiddenPosition = position + 1;
+            } else {
+                packedGrid.set(position % numColumns, position / numColumns,
+                        cellData.getColumnSpan(), cellData.getRowSpan());
+            }
+            packedPositions[i] = position;
+        }
+
+        ArrayList<CellData<T>> movingCells = new ArrayList<>();
+        int[] newPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            if (packedPositions[i] != cellData.getPosition()) {
+                newPositions[movingCells.size()] = packedPositions[i];
+                movingCells.add(cellData);
+            }
+        }
+        if (movingCells.isEmpty()) {
+            return 0;
+        }
+        moveCells(movingCells, newPositions);
+        return movingCells.size();
+    }
+
+    /**
+     * Rearranges the cells in the order given by the comparator, in reading
+     * order. The cells keep occupying the same set of positions, so only
+     * the cells whose position changes are moved, and all of them are
+     * animated together with a single onReorder() call. If some cells span
+     * multiple slots, the cells are packed from the top-left instead.
+     * For large grids the cells are sorted on a background thread, so the
+     * comparator must not depend on state changed by the main thread.
+     *
+     * @param comparator Comparator for the objects
+     */
+    public void arrange(Comparator<? super T> comparator) {
+        arrange(comparator, null);
+    }
+
+    /**
+     * Rearranges the cells in the order given by the comparator, and tells
+     * the listener whether the cells have been arranged. Nothing is moved if
+     * the cells span multiple slots and one of them does not fit when the
+     * cells are packed in the new order.
+     *
+     * @param comparator Comparator for the objects
+     * @param listener   Listener which is called on the main thread when
+     *                   finished, possibly before this method returns, or null
+     * @see #arrange(Comparator)
+     */
+    public void arrange(final Comparator<? super T> comparator, final OnArrangeFinishedListener listener) {
+        if (cellMap == null || cellMap.size() < 2) {
+            if (listener != null) {
+                listener.onArrangeFinished(true);
+            }
+            return;
+        }
+        final int generation = ++arrangeGeneration;
+        final ArrayList<CellData<T>> cells = new ArrayList<>(cellMap.size());
+        // The objects are read here, as setObject() may replace them on this thread while sorting
+        final ArrayList<T> objects = new ArrayList<>(cellMap.size());
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            cells.add(cellData);
+            objects.add(cellData.getObject());
+        }
+        if (cells.size() < ARRANGE_ASYNC_THRESHOLD) {
+            boolean isArranged = applyArrangement(cells, objects, sortIndexes(objects, comparator), comparator);
+            if (listener != null) {
+                listener.onArrangeFinished(isArranged);
+            }
+            return;
+        }
+        if (arrangeExecutor == null) {
+            arrangeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG + " arrange");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        arrangeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Integer[] sortedOrder;
+                try {
+                    sortedOrder = sortIndexes(objects, comparator);
+                } catch (RuntimeException e) {
+                    // Do not let the comparator kill the process from this thread
+                    Log.e(TAG, "arrange: comparator failed: " + e);
+                    sortedOrder = null;
+                }
+                final Integer[] order = sortedOrder;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean isArranged = false;
+                        if (order != null && generation == arrangeGeneration) { // not superseded by a later arrange()
+                            isArranged = applyArrangement(cells, objects, order, comparator);
+                        }
+                        if (listener != null) {
+                            listener.onArrangeFinished(isArranged);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-                Point destXY = getXYForPosition(editingPosition);
-                if (destXY != null) {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                        cellView.setScaleX(1.0f);
-                        cellView.setScaleY(1.0f);
-                        cellView.setX(destXY.x);
-                        cellView.setY(destXY.y);
+    /**
+     * Sorts the indexes of the objects by the objects. The sort is stable,
+     * so equal objects keep their order.
+     *
+     * @param objects    The objects
+     * @param comparator Comparator for the objects
+     * @return Indexes into objects in the sorted order
+     */
+    private static <T> Integer[] sortIndexes(final List<T> objects, final Comparator<? super T> comparator) {
+        Integer[] order = new Integer[objects.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return comparator.compare(objects.get(lhs), objects.get(rhs));
+            }
+        });
+        return order;
+    }
 
-                        // Fade in the cell
-                        AnimatorSet animatorSet = new AnimatorSet();
-                        ObjectAnimator animFadeIn = ObjectAnimator.ofFloat(cellView, "alpha", 0f, 1f);
-                        animatorSet.play(animFadeIn);
-                        animatorSet.start();
-                    } else {
-                        cellView.layout(
-                                destXY.x,
-                                destXY.y,
-                                (int) (destXY.x + widthPerCell),
-                                (int) (destXY.y + heightPerCell)
-                        );
+    /**
+     * Moves the cells to the positions given by the sorted order.
+     *
+     * @param cells      The cells in the order of their positions when sorting started
+     * @param objects    The objects of the cells when sorting started
+     * @param order      Indexes into cells in the arranged order
+     * @param comparator Comparator used to sort again if the cells have changed since then
+     * @return True if the cells are in the arranged order. Otherwise false.
+     */
+    private boolean applyArrangement(List<CellData<T>> cells, List<T> objects, Integer[] order,
+                                     Comparator<? super T> comparator) {
+        if (isDragging) {
+            Log.w(TAG, "arrange: ignored while dragging");
+            return false;
+        }
+        // Sort again on this thread if cells were added, removed, moved or changed in the meantime
+        boolean isStale = cells.size() != cellMap.size();
+        for (int i = 0, l = cells.size(); i < l && !isStale; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            isStale = cellData != cells.get(i) || cellData.getObject() != objects.get(i);
+        }
+        if (isStale) {
+            cells = new ArrayList<>(cellMap.size());
+            objects = new ArrayList<>(cellMap.size());
+            for (int i = 0, l = cellMap.size(); i < l; i++) {
+                CellData<T> cellData = cellMap.valueAt(i);
+                cells.add(cellData);
+                objects.add(cellData.getObject());
+            }
+            order = sortIndexes(objects, comparator);
+        }
+
+        int count = order.length;
+        ArrayList<CellData<T>> sortedCells = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sortedCells.add(cells.get(order[i]));
+        }
+        int[] targetPositions = new int[count]; // for each cell in sortedCells
+        if (!hasSpannedCell(cells)) {
+            // Assign the occupied positions in ascending order. The cells then
+            // form cycles of a permutation; cells at fixed points do not move,
+            // and moveCells() places each cycle at once without a spare slot.
+            for (int i = 0; i < count; i++) {
+                targetPositions[i] = cells.get(i).getPosition();
+            }
+        } else {
+            OccupancyGrid packedGrid = new OccupancyGrid(numColumns, numRows);
+            int nextHiddenPosition = getMaxPosition() + 1;
+            for (int i = 0; i < count; i++) {
+                CellData<T> cellData = sortedCells.get(i);
+                int position = packedGrid.findFirstFit(cellData.getColumnSpan(), cellData.getRowSpan());
+                if (position == POSITION_INVALID) {
+                    if (fitsInGrid(cellData)) {
+                        Log.w(TAG, "arrange: no room for the cell at " + cellData.getPosition());
+                        return false;
                     }
-                    invalidate();
+                    position = nextHiddenPosition++;
+                } else {
+                    packedGrid.set(position % numColumns, position / numColumns,
+                            cellData.getColumnSpan(), cellData.getRowSpan());
                 }
+                targetPositions[i] = position;
+            }
+        }
+
+        ArrayList<CellData<T>> movingCells = new ArrayList<>();
+        int[] newPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            CellData<T> cellData = sortedCells.get(i);
+            if (cellData.getPosition() != targetPositions[i]) {
+                newPositions[movingCells.size()] = targetPositions[i];
+                movingCells.add(cellData);
             }
-            editingPosition = POSITION_INVALID;
         }
+        if (movingCells.isEmpty()) {
+            return true;
+        }
+        int[] movingPositions = new int[movingCells.size()];
+        System.arraycopy(newPositions, 0, movingPositions, 0, movingPositions.length);
+        if (!canMoveCells(movingCells, movingPositions)) {
+            Log.w(TAG, "arrange: positions are occupied by other cells");
+            return false;
+        }
+        moveCells(movingCells, movingPositions);
+        notifyReorder();
+        return true;
     }
 
     /**
-     * Cancels the ongoing edit.
+     * Restores the positions before the last reorder recorded in ReorderJournal.
+     * Reorders which added or removed cells cannot be undone.
+     *
+     * @return True if the reorder has been undone. Otherwise false.
      */
-    public void cancelEdit() {
-        putBackEditingCellView();
+    public boolean undoReorder() {
+        if (reorderJournal == null) {
+            return false;
+        }
+        ReorderJournal.Transaction transaction = reorderJournal.peekUndo();
+        if (transaction == null) {
+            return false;
+        }
+        if (!applyJournalTransaction(transaction, true)) {
+            reorderJournal.clearHistory();
+            return false;
+        }
+        reorderJournal.commitUndo();
+        notifyReorder();
+        return true;
+    }
 
+    /**
+     * Applies the last reorder undone by undoReorder() again.
+     *
+     * @return True if the reorder has been redone. Otherwise false.
+     */
+    public boolean redoReorder() {
+        if (reorderJournal == null) {
+            return false;
+        }
+        ReorderJournal.Transaction transaction = reorderJournal.peekRedo();
+        if (transaction == null) {
+            return false;
+        }
+        if (!applyJournalTransaction(transaction, false)) {
+            reorderJournal.clearHistory();
+            return false;
+        }
+        reorderJournal.commitRedo();
+        notifyReorder();
+        return true;
+    }
+
+    /**
+     * Moves the cells in the transaction at once. Nothing is moved if a cell
+     * is not found or the positions are occupied by other cells, e.g. because
+     * a new DataProvider has been set.
+     *
+     * @param transaction Transaction from ReorderJournal
+     * @param isUndo      True to restore the old positions, false to restore the new ones
+     * @return True if the cells have been moved. Otherwise false.
+     */
+    private boolean applyJournalTransaction(ReorderJournal.Transaction transaction, boolean isUndo) {
+        if (isDragging || idMap == null) {
+            return false;
+        }
+        // The last record for each cell decides its position
+        ArrayList<CellData<T>> cells = new ArrayList<>(transaction.size());
+        ArrayList<Integer> targetPositions = new ArrayList<>(transaction.size());
+        for (int i = 0, l = transaction.size(); i < l; i++) {
+            int index = isUndo ? l - 1 - i : i;
+            CellData<T> cellData = idMap.get(transaction.getId(index));
+            if (cellData == null) {
+                return false;
+            }
+            int position = isUndo ? transaction.getFromPosition(index) : transaction.getToPosition(index);
+            int existingIndex = cells.indexOf(cellData);
+            if (existingIndex >= 0) {
+                targetPositions.set(existingIndex, position);
+            } else {
+                cells.add(cellData);
+                targetPositions.add(position);
+            }
+        }
+        int[] newPositions = new int[cells.size()];
+        for (int i = 0; i < newPositions.length; i++) {
+            newPositions[i] = targetPositions.get(i);
+        }
+        if (!canMoveCells(cells, newPositions)) {
+            Log.w(TAG, "Positions in the journal are occupied by other cells");
+            return false;
+        }
+
+        isReplayingJournal = true;
+        try {
+            moveCells(cells, newPositions);
+        } finally {
+            isReplayingJournal = false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the cells can be moved to the new positions at once
+     * without overlapping other cells or each other.
+     *
+     * @param cells        CellData list that will be moved
+     * @param newPositions The new position for each cell
+     * @return True if moveCells() can move the cells. Otherwise false.
+     */
+    private boolean canMoveCells(List<CellData<T>> cells, int[] newPositions) {
+        int count = cells.size();
+        int[] oldPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            oldPositions[i] = cells.get(i).getPosition();
+            removeCell(cells.get(i));
+        }
+        boolean isValid = true;
+        int placedCount = 0;
+        for (; placedCount < count; placedCount++) {
+            CellData<T> cellData = cells.get(placedCount);
+            if (!isPositionAvailable(newPositions[placedCount], cellData.getColumnSpan(), cellData.getRowSpan())) {
+                isValid = false;
+                break;
+            }
+            cellData.setPosition(newPositions[placedCount]);
+            putCell(cellData);
+        }
+        for (int i = 0; i < placedCount; i++) {
+            removeCell(cells.get(i));
+        }
+        for (int i = 0; i < count; i++) {
+            cells.get(i).setPosition(oldPositions[i]);
+            putCell(cells.get(i));
+        }
+        return isValid;
+    }
+
+    /**
+     * Writes the new position to DataProvider and records it in ReorderJournal
+     * and SQLitePositionWriter.
+     *
+     * @param object      Object representing a cell
+     * @param oldPosition The position before the change, or POSITION_INVALID if the cell is added
+     * @param newPosition The new position
+     */
+    private void writeViewPosition(T object, int oldPosition, int newPosition) {
+        this.provider.setViewPosition(object, newPosition);
+        if ((reorderJournal != null || positionWriter != null) && this.provider instanceof StableIdDataProvider) {
+            long itemId = ((StableIdDataProvider<T>) this.provider).getItemId(object);
+            if (reorderJournal != null && !isReplayingJournal) {
+                reorderJournal.record(itemId, oldPosition, newPosition);
+            }
+            if (positionWriter != null) {
+                positionWriter.write(itemId, newPosition);
+            }
+        }
+    }
+
+    private void recordRemoval(CellData<T> cellData) {
+        if (reorderJournal != null && this.provider instanceof StableIdDataProvider) {
+            reorderJournal.record(getItemId(cellData), cellData.getPosition(), POSITION_INVALID);
+        }
+    }
+
+    /**
+     * Commits the recorded position changes and calls onReorder().
+     */
+    private void notifyReorder() {
+        if (isApplyingMutations) {
+            isReorderPending = true;
+            return;
+        }
+        if (reorderJournal != null) {
+            reorderJournal.commit();
+        }
         if (listener != null) {
-            listener.onDragEnd();
+            listener.onReorder();
         }
     }
 
-    @Override
-    public Parcelable onSaveInstanceState() {
-        Bundle bundle = new Bundle();
-        bundle.putInt("editingPosition", editingPosition);
-        bundle.putParcelable("superState", super.onSaveInstanceState());
-        return bundle;
+    /**
+     * Pushes a new live value for the cell of the object. This method can be
+     * called from any thread. Only the latest value for each cell is kept,
+     * and the values are applied with LiveValueDataProvider.bindLiveValue()
+     * once per frame. Cells outside the grid, and all cells while the window
+     * is hidden, receive only their latest value when they become visible.
+     * The latest value is applied again after each full bind of the cell
+     * view, so getView() does not need to know about it.
+     *
+     * @param object Object representing a cell
+     * @param value  The new value
+     */
+    public void pushLiveValue(T object, Object value) {
+        synchronized (liveValueLock) {
+            pendingLiveValues.put(object, value);
+            if (isLiveValueDrainScheduled) {
+                return;
+            }
+            isLiveValueDrainScheduled = true;
+        }
+        mainHandler.post(scheduleLiveValueDrainRunnable);
     }
 
-    @Override
-    public void onRestoreInstanceState(Parcelable state) {
-        if (state instanceof Bundle) {
-            Bundle bundle = (Bundle) state;
-            editingPosition = bundle.getInt("editingPosition", POSITION_INVALID);
-            Parcelable superState = bundle.getParcelable("superState");
-            super.onRestoreInstanceState(superState);
-        } else {
-            Log.e(TAG, "state is not an instance of Bundle");
+    /**
+     * Applies the pushed live values to the visible cells. Called on the
+     * main thread once per frame.
+     */
+    private void applyLiveValues() {
+        if (getWindowVisibility() != View.VISIBLE) {
+            // Keep the values until the window is shown again
+            synchronized (liveValueLock) {
+                isLiveValueDrainScheduled = false;
+            }
+            return;
+        }
+        IdentityHashMap<T, Object> values;
+        synchronized (liveValueLock) {
+            isLiveValueDrainScheduled = false;
+            // Swap the maps so that pushLiveValue() is not blocked while binding
+            values = pendingLiveValues;
+            pendingLiveValues = applyingLiveValues;
+            applyingLiveValues = values;
+        }
+        if (!(this.provider instanceof LiveValueDataProvider)) {
+            if (!values.isEmpty()) {
+                Log.w(TAG, "pushLiveValue: DataProvider does not implement LiveValueDataProvider");
+            }
+            values.clear();
+            return;
+        }
+        for (Map.Entry<T, Object> entry : values.entrySet()) {
+            CellData<T> cellData = findLiveValueCell(entry.getKey());
+            if (cellData == null) {
+                continue;
+            }
+            liveValues.put(cellData, entry.getValue());
+            if (cellData.getView() != null) {
+                ((LiveValueDataProvider<T>) this.provider).bindLiveValue(
+                        cellData.getView(), cellData.getObject(), entry.getValue());
+            }
         }
+        values.clear();
     }
 
     /**
-     * Updates the view using DataProvider.
+     * Returns CellData for the object of a pushed live value. The cell is
+     * remembered so that values pushed for the object in later frames are
+     * applied without searching the cells.
+     *
+     * @param object Object representing a cell
+     * @return CellData, or null if the object is not in this view
      */
-    public void notifyDataSetChanged() {
-        invalidate();
+    private CellData<T> findLiveValueCell(T object) {
+        CellData<T> cellData = liveValueCells.get(object);
+        if (cellData != null) {
+            if (cellData.getObject() == object && cellMap != null && cellMap.get(cellData.getPosition()) == cellData) {
+                return cellData;
+            }
+            liveValueCells.remove(object);
+        }
+        cellData = findCellData(object);
+        if (cellData != null) {
+            liveValueCells.put(object, cellData);
+        }
+        return cellData;
     }
 
     /**
-     * Updates the view for the cell which is being edited.
+     * Applies the latest live value of the cell again. Called after the cell
+     * view is fully bound with getView(), which may reset the live value.
+     *
+     * @param cellData CellData whose view has just been bound
      */
-    public void updateEditingObject() {
-        if (editingPosition != POSITION_INVALID) {
-            CellData<T> cellData = cellMap.get(editingPosition);
-            if (cellData != null) {
-                if (this.provider == null) {
-                    throw new IllegalStateException("DataProvider is null");
-                }
+    private void applyLiveValue(CellData<T> cellData) {
+        if (liveValues.isEmpty() || cellData.getView() == null || !liveValues.containsKey(cellData)) {
+            return;
+        }
+        if (this.provider instanceof LiveValueDataProvider) {
+            ((LiveValueDataProvider<T>) this.provider).bindLiveValue(
+                    cellData.getView(), cellData.getObject(), liveValues.get(cellData));
+        }
+    }
 
-                // Update contents of the view
-                this.provider.getView(cellData.getView(), cellData.getObject());
+    /**
+     * Forgets the live value of the cell which is removed from this view.
+     *
+     * @param cellData CellData
+     */
+    private void removeLiveValue(CellData<T> cellData) {
+        liveValues.remove(cellData);
+        liveValueCells.remove(cellData.getObject());
+    }
 
-                invalidate();
+    /**
+     * Carries the live values over to the cells created by setupViews() for
+     * the same items, and applies them to the cells which have views.
+     *
+     * @param oldLiveValues Live values of the cells before setupViews()
+     * @param hasStableIds  True to match the items by their stable ids,
+     *                      otherwise they are matched by identity
+     */
+    private void restoreLiveValues(IdentityHashMap<CellData<T>, Object> oldLiveValues, boolean hasStableIds) {
+        LongSparseArray<Object> valuesById = null;
+        IdentityHashMap<T, Object> valuesByObject = null;
+        if (hasStableIds) {
+            valuesById = new LongSparseArray<>();
+            for (Map.Entry<CellData<T>, Object> entry : oldLiveValues.entrySet()) {
+                valuesById.put(getItemId(entry.getKey()), entry.getValue());
+            }
+        } else {
+            valuesByObject = new IdentityHashMap<>();
+            for (Map.Entry<CellData<T>, Object> entry : oldLiveValues.entrySet()) {
+                valuesByObject.put(entry.getKey().getObject(), entry.getValue());
+            }
+        }
+        for (int i = 0, l = cellMap.size(); i < l; i++) {
+            CellData<T> cellData = cellMap.valueAt(i);
+            if (hasStableIds) {
+                int index = valuesById.indexOfKey(getItemId(cellData));
+                if (index < 0) {
+                    continue;
+                }
+                liveValues.put(cellData, valuesById.valueAt(index));
             } else {
-                Log.e(TAG, "No data at editingPosition");
+                if (!valuesByObject.containsKey(cellData.getObject())) {
+                    continue;
+                }
+                liveValues.put(cellData, valuesByObject.get(cellData.getObject()));
             }
+            applyLiveValue(cellData);
+        }
+    }
+
+    /**
+     * Queues a change to the cells. This method can be called from any thread.
+     * The queued mutations are applied together on the main thread on the
+     * next frame, and onReorder() is called only once for them. Redundant
+     * mutations are coalesced: a cell added and removed in the same frame is
+     * never created, and only the last move of a cell is applied. While a
+     * cell is being dragged, the mutations are kept until the drag ends.
+     *
+     * @param mutation The change
+     */
+    public void post(CellMutation<T> mutation) {
+        mutationQueue.offer(mutation);
+        if (isMutationDrainScheduled.compareAndSet(false, true)) {
+            mainHandler.post(scheduleMutationDrainRunnable);
         }
+    }
 
-        putBackEditingCellView();
+    /**
+     * Applies the queued mutations. Called on the main thread once per frame.
+     */
+    private void applyMutations() {
+        isMutationDrainScheduled.set(false);
+        if (isDragging) {
+            return; // resumed by resetDragState() when the drag ends
+        }
+        ArrayList<CellMutation<T>> mutations = new ArrayList<>();
+        CellMutation<T> polled;
+        while ((polled = mutationQueue.poll()) != null) {
+            mutations.add(polled);
+        }
+        if (mutations.isEmpty()) {
+            return;
+        }
 
-        if (listener != null) {
-            listener.onDragEnd();
+        isApplyingMutations = true;
+        try {
+            // A new DataProvider makes the preceding mutations obsolete
+            int start = 0;
+            for (int i = mutations.size() - 1; i >= 0; i--) {
+                if (mutations.get(i).type == CellMutation.TYPE_SET_DATA_PROVIDER) {
+                    setDataProvider(mutations.get(i).provider);
+                    start = i + 1;
+                    break;
+                }
+            }
+            if (start < mutations.size()) {
+                if (this.provider == null) {
+                    Log.w(TAG, "post: DataProvider is not set; dropping " + (mutations.size() - start) + " mutations");
+                } else {
+                    applyCellChanges(coalesceMutations(mutations, start));
+                }
+            }
+        } finally {
+            isApplyingMutations = false;
+        }
+        if (isReorderPending) {
+            isReorderPending = false;
+            notifyReorder();
         }
     }
 
     /**
-     * Moves the cell to the new position.
+     * Folds the mutations into the net change for each cell.
      *
-     * @param cellData    CellData that will be moved
-     * @param newPosition The new position for the cell
+     * @param mutations The mutations in the order they were posted
+     * @param start     Index of the first mutation to fold
+     * @return The changes in the order the cells first appeared
      */
-    private void moveCell(CellData<T> cellData, int newPosition) {
-        Point newPoint = getXYForPosition(newPosition);
-        if (newPoint == null) {
-            Log.e(TAG, "moveCell: Invalid position is specified: " + newPosition);
-            return;
+    private List<CellChange<T>> coalesceMutations(List<CellMutation<T>> mutations, int start) {
+        boolean hasStableIds = this.provider instanceof StableIdDataProvider;
+        Map<Object, CellChange<T>> changeMap = hasStableIds
+                ? new HashMap<Object, CellChange<T>>()
+                : new IdentityHashMap<Object, CellChange<T>>();
+        ArrayList<CellChange<T>> changes = new ArrayList<>();
+        for (int i = start, l = mutations.size(); i < l; i++) {
+            CellMutation<T> mutation = mutations.get(i);
+            Object key = hasStableIds
+                    ? (Object) ((StableIdDataProvider<T>) this.provider).getItemId(mutation.object)
+                    : mutation.object;
+            CellChange<T> change = changeMap.get(key);
+            if (change == null) {
+                change = new CellChange<>();
+                changeMap.put(key, change);
+                changes.add(change);
+            }
+            change.object = mutation.object;
+            switch (mutation.type) {
+                case CellMutation.TYPE_ADD:
+                    change.isAdded = true;
+                    break;
+                case CellMutation.TYPE_REMOVE:
+                    if (change.isAdded && !change.isRemoved) { // added and removed in the same frame
+                        change.isAdded = false;
+                    } else {
+                        change.isRemoved = true;
+                        change.isAdded = false;
+                    }
+                    change.movePosition = POSITION_INVALID;
+                    change.isFullUpdate = false;
+                    change.payloads.clear();
+                    break;
+                case CellMutation.TYPE_MOVE:
+                    change.movePosition = mutation.position;
+                    break;
+                case CellMutation.TYPE_UPDATE:
+                    if (mutation.payload == null) {
+                        change.isFullUpdate = true;
+                    } else {
+                        change.payloads.add(mutation.payload);
+                    }
+                    break;
+            }
         }
+        return changes;
+    }
 
-        // Move the cell to newPosition
-        View cellView = cellData.getView();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-            AnimatorSet animatorSet = new AnimatorSet();
-            ObjectAnimator animX = ObjectAnimator.ofFloat(cellView, "x", newPoint.x);
-            ObjectAnimator animY = ObjectAnimator.ofFloat(cellView, "y", newPoint.y);
-            animatorSet.playTogether(animX, animY);
-            animatorSet.start();
-        } else {
-            cellView.layout(
-                    newPoint.x,
-                    newPoint.y,
-                    (int) (newPoint.x + widthPerCell),
-                    (int) (newPoint.y + heightPerCell)
-            );
+    /**
+     * Applies removals, additions, moves and updates in this order so that
+     * removed cells make room for added and moved ones.
+     *
+     * @param changes The net changes
+     */
+    private void applyCellChanges(List<CellChange<T>> changes) {
+        int count = changes.size();
+        for (int i = 0; i < count; i++) {
+            CellChange<T> change = changes.get(i);
+            if (change.isRemoved) {
+                CellData<T> cellData = findCellData(change.object);
+                if (cellData != null) {
+                    deleteCell(cellData);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            CellChange<T> change = changes.get(i);
+            if (change.isAdded) {
+                addObject(change.object);
+            }
+        }
+
+        ArrayList<CellData<T>> movingCells = new ArrayList<>();
+        ArrayList<Integer> targetPositions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CellChange<T> change = changes.get(i);
+            if (change.movePosition == POSITION_INVALID) {
+                continue;
+            }
+            CellData<T> cellData = findCellData(change.object);
+            if (cellData != null && cellData.getPosition() != change.movePosition) {
+                movingCells.add(cellData);
+                targetPositions.add(change.movePosition);
+            }
+        }
+        if (!movingCells.isEmpty()) {
+            int[] newPositions = new int[movingCells.size()];
+            for (int i = 0; i < newPositions.length; i++) {
+                newPositions[i] = targetPositions.get(i);
+            }
+            if (canMoveCells(movingCells, newPositions)) {
+                moveCells(movingCells, newPositions);
+            } else {
+                // Move the cells one by one, skipping those whose position is taken
+                for (int i = 0; i < newPositions.length; i++) {
+                    List<CellData<T>> cells = movingCells.subList(i, i + 1);
+                    int[] position = {newPositions[i]};
+                    if (canMoveCells(cells, position)) {
+                        moveCells(cells, position);
+                    } else {
+                        Log.w(TAG, "post: position " + newPositions[i] + " is occupied");
+                    }
+                }
+            }
+            notifyReorder();
         }
 
-        int oldPosition = cellData.getPosition();
-        cellData.setPosition(newPosition);
-        cellMap.remove(oldPosition);
-        cellMap.put(newPosition, cellData);
-
-        T object = cellData.getObject();
-        if (this.provider == null) {
-            throw new IllegalStateException("DataProvider is null");
+        for (int i = 0; i < count; i++) {
+            CellChange<T> change = changes.get(i);
+            if (!change.isFullUpdate && change.payloads.isEmpty()) {
+                continue;
+            }
+            CellData<T> cellData = findCellData(change.object);
+            if (cellData == null) {
+                continue;
+            }
+            cellData.setObject(change.object);
+            if (change.isFullUpdate) {
+                notifyObjectChanged(change.object, null);
+            }
+            for (int j = 0, l = change.payloads.size(); j < l; j++) {
+                notifyObjectChanged(change.object, change.payloads.get(j));
+            }
+        }
+        if (!dirtyCells.isEmpty()) {
+            bindDirtyCells();
         }
-        this.provider.setViewPosition(object, newPosition);
     }
 
     private void cancelMove() {
@@ -834,17 +4155,162 @@ public class PigeonholeView<T> extends ViewGroup {
             ObjectAnimator animScaleX = ObjectAnimator.ofFloat(cellView, "scaleX", 1.0f);
             ObjectAnimator animScaleY = ObjectAnimator.ofFloat(cellView, "scaleY", 1.0f);
             animatorSet.playTogether(animX, animY, animScaleX, animScaleY);
-            animatorSet.start();
+            startAnimator(animatorSet);
         } else {
             cellView.layout(
                     targetPoint.x,
                     targetPoint.y,
-                    (int) (targetPoint.x + widthPerCell),
-                    (int) (targetPoint.y + heightPerCell)
+                    targetPoint.x + getCellViewWidth(hoverCellData),
+                    targetPoint.y + getCellViewHeight(hoverCellData)
             );
         }
 
+        for (int i = 0, l = groupCells.size(); i < l; i++) {
+            View groupCellView = groupCells.get(i).getView();
+            Point groupPoint = getXYForPosition(groupCells.get(i).getPosition());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                AnimatorSet animatorSet = new AnimatorSet();
+                ObjectAnimator animX = ObjectAnimator.ofFloat(groupCellView, "x", groupPoint.x);
+                ObjectAnimator animY = ObjectAnimator.ofFloat(groupCellView, "y", groupPoint.y);
+                ObjectAnimator animScaleX = ObjectAnimator.ofFloat(groupCellView, "scaleX", 1.0f);
+                ObjectAnimator animScaleY = ObjectAnimator.ofFloat(groupCellView, "scaleY", 1.0f);
+                animatorSet.playTogether(animX, animY, animScaleX, animScaleY);
+                startAnimator(animatorSet);
+            } else {
+                groupCellView.layout(
+                        groupPoint.x,
+                        groupPoint.y,
+                        (int) (groupPoint.x + widthPerCell),
+                        (int) (groupPoint.y + heightPerCell)
+                );
+            }
+        }
+
+        swapTargetView.setVisibility(View.GONE);
+    }
+
+    /**
+     * Drops the selected cells at once keeping their relative layout.
+     * Cells occupying the destination are moved to the vacated positions.
+     *
+     * @param x Pixels along the x-axis
+     * @param y Pixels along the y-axis
+     */
+    private void endGroupDrag(float x, float y) {
+        Point dropPoint = getColRowForXY(x, y);
+        int groupSize = groupCells.size() + 1;
+        ArrayList<CellData<T>> movingCells = new ArrayList<>(groupSize);
+        int[] targetPositions = new int[groupSize];
+        movingCells.add(hoverCellData);
+        if (dropPoint != null) {
+            targetPositions[0] = dropPoint.y * numColumns + dropPoint.x;
+            for (int i = 0; i < groupSize - 1; i++) {
+                int col = dropPoint.x + groupColOffsets[i];
+                int row = dropPoint.y + groupRowOffsets[i];
+                if (col < 0 || col >= numColumns || row < 0 || row >= numRows) { // Does not fit
+                    dropPoint = null;
+                    break;
+                }
+                movingCells.add(groupCells.get(i));
+                targetPositions[i + 1] = row * numColumns + col;
+            }
+        }
+        if (dropPoint == null) { // Cancel move
+            cancelMove();
+            if (listener != null) {
+                listener.onDragEnd();
+            }
+            return;
+        }
+
+        // Cells at the target positions which are not part of the group
+        // are moved to the positions vacated by the group.
+        SparseArray<CellData<T>> targets = new SparseArray<>(groupSize);
+        for (int i = 0; i < groupSize; i++) {
+            targets.put(targetPositions[i], movingCells.get(i));
+        }
+        ArrayList<CellData<T>> displacedCells = new ArrayList<>();
+        for (int i = 0; i < groupSize; i++) {
+            CellData<T> occupant = getCellAt(targetPositions[i]);
+            if (occupant != null && !movingCells.contains(occupant) && !displacedCells.contains(occupant)) {
+                if (occupant.isSpanned()) { // Spanning cells cannot be moved into single slots
+                    cancelMove();
+                    if (listener != null) {
+                        listener.onDragEnd();
+                    }
+                    return;
+                }
+                displacedCells.add(occupant);
+            }
+        }
+        int vacantIndex = 0;
+        int[] newPositions = new int[groupSize + displacedCells.size()];
+        System.arraycopy(targetPositions, 0, newPositions, 0, groupSize);
+        for (int i = 0, l = displacedCells.size(); i < l; i++) {
+            int vacantPosition;
+            do {
+                vacantPosition = movingCells.get(vacantIndex++).getPosition();
+            } while (targets.get(vacantPosition) != null);
+            newPositions[groupSize + i] = vacantPosition;
+        }
+        movingCells.addAll(displacedCells);
+
+        boolean isAltered = false;
+        for (int i = 0, l = movingCells.size(); i < l; i++) {
+            if (movingCells.get(i).getPosition() != newPositions[i]) {
+                isAltered = true;
+                break;
+            }
+        }
+        moveCells(movingCells, newPositions);
         swapTargetView.setVisibility(View.GONE);
+
+        if (listener != null) {
+            listener.onDragEnd();
+        }
+        if (isAltered) {
+            notifyReorder();
+        }
+    }
+
+    /**
+     * Returns the view position where the dragged cell will be dropped.
+     * Single cells are dropped at the pointer, and spanning cells are
+     * dropped where their top-left slot is.
+     *
+     * @param cellData The dragged cell
+     * @param x        Pointer position along the x-axis
+     * @param y        Pointer position along the y-axis
+     * @param viewX    Position of the dragged cell view along the x-axis
+     * @param viewY    Position of the dragged cell view along the y-axis
+     * @return The view position, POSITION_DROP_AREA or POSITION_INVALID
+     */
+    private int getDropPosition(CellData<T> cellData, float x, float y, float viewX, float viewY) {
+        int position = getPositionForXY(x, y);
+        if (position >= 0 && cellData.isSpanned()) {
+            position = getPositionForXY(viewX + widthPerCell / 2, viewY + heightPerCell / 2);
+        }
+        return position;
+    }
+
+    /**
+     * Returns whether the dragged cell can be dropped at the position.
+     * A single cell can also be dropped onto another single cell, in which
+     * case they are swapped.
+     *
+     * @param cellData The dragged cell
+     * @param position The view position
+     * @return True if the cell can be dropped. Otherwise false.
+     */
+    private boolean canDropAt(CellData<T> cellData, int position) {
+        if (isVacantFor(cellData, position)) {
+            return true;
+        }
+        if (cellData.isSpanned()) {
+            return false;
+        }
+        CellData<T> occupant = getCellAt(position);
+        return occupant != null && !occupant.isSpanned();
     }
 
     private void endDrag(float x, float y) {
@@ -852,7 +4318,40 @@ public class PigeonholeView<T> extends ViewGroup {
             Log.e(TAG, "endDrag: hoverCellData is null");
             return;
         }
-        int dropPosition = getPositionForXY(x, y);
+        if (!groupCells.isEmpty()) {
+            endGroupDrag(x, y);
+            dropTargetView.setVisibility(View.GONE);
+            return;
+        }
+        if (dragCoordinator != null) {
+            PigeonholeView<T> dragOwner = dragCoordinator.getDragOwner(this);
+            if (dragOwner != this) {
+                Point offset = dragCoordinator.getOffset(this, dragOwner);
+                if (dragOwner.dropForeignCell(this, x + offset.x, y + offset.y, posX + offset.x, posY + offset.y)) {
+                    dragCoordinator.resetDragOwner();
+                    dropTargetView.setVisibility(View.GONE);
+                    if (listener != null) {
+                        listener.onDragEnd();
+                    }
+                    notifyReorder();
+                    return;
+                }
+                // The other view could not accept the cell
+                reclaimDraggedCell();
+                cancelMove();
+                if (listener != null) {
+                    listener.onDragEnd();
+                }
+                dropTargetView.setVisibility(View.GONE);
+                return;
+            }
+            dragCoordinator.resetDragOwner();
+        }
+        int dropPosition = getDropPosition(hoverCellData, x, y, posX, posY);
+        if (dropPosition >= 0 && dropPosition != hoverCellData.getPosition()
+                && !canDropAt(hoverCellData, dropPosition)) {
+            dropPosition = POSITION_INVALID;
+        }
         boolean isAltered = false;
         if (dropPosition == POSITION_INVALID) { // Cancel move
             cancelMove();
@@ -862,8 +4361,7 @@ public class PigeonholeView<T> extends ViewGroup {
         } else if (dropPosition == POSITION_DROP_AREA) { // Edit object
             editHoveringObject();
         } else { // Move
-            Point dropPoint = getColRowForXY(x, y);
-            Point dropXY = getXYForColRow(dropPoint.x, dropPoint.y);
+            Point dropXY = getXYForPosition(dropPosition);
             View cellView = hoverCellData.getView();
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -874,33 +4372,37 @@ public class PigeonholeView<T> extends ViewGroup {
                 ObjectAnimator animScaleX = ObjectAnimator.ofFloat(cellView, "scaleX", 1.0f);
                 ObjectAnimator animScaleY = ObjectAnimator.ofFloat(cellView, "scaleY", 1.0f);
                 animatorSet.playTogether(animX, animY, animScaleX, animScaleY);
-                animatorSet.start();
+                startAnimator(animatorSet);
             } else {
                 cellView.layout(
                         dropXY.x,
                         dropXY.y,
-                        (int) (dropXY.x + widthPerCell),
-                        (int) (dropXY.y + heightPerCell)
+                        dropXY.x + getCellViewWidth(hoverCellData),
+                        dropXY.y + getCellViewHeight(hoverCellData)
                 );
             }
 
             int oldPosition = hoverCellData.getPosition();
-            int newPosition = getPositionForXY(x, y);
+            int newPosition = dropPosition;
             if (newPosition != oldPosition) {
-                hoverCellData.setPosition(newPosition);
-                cellMap.remove(oldPosition);
+                CellData<T> occupant = getCellAt(newPosition);
+                if (occupant != null && occupant != hoverCellData) {
+                    swapCandidateCellData = occupant;
+                }
+                removeCell(hoverCellData);
                 if (swapCandidateCellData != null && swapCandidateCellData != hoverCellData) {
                     moveCell(swapCandidateCellData, oldPosition);
                     swapTargetView.setVisibility(View.GONE);
                 }
-                cellMap.put(newPosition, hoverCellData);
+                hoverCellData.setPosition(newPosition);
+                putCell(hoverCellData);
                 // Moved cell from oldPosition to newPosition
 
                 T object = hoverCellData.getObject();
                 if (this.provider == null) {
                     throw new IllegalStateException("DataProvider is null");
                 }
-                this.provider.setViewPosition(object, newPosition);
+                writeViewPosition(object, oldPosition, newPosition);
 
                 isAltered = true;
             }
@@ -911,9 +4413,7 @@ public class PigeonholeView<T> extends ViewGroup {
         dropTargetView.setVisibility(View.GONE);
 
         if (isAltered) {
-            if (listener != null) {
-                listener.onReorder();
-            }
+            notifyReorder();
         }
     }
 
@@ -923,9 +4423,30 @@ public class PigeonholeView<T> extends ViewGroup {
      * @param cellData CellData that is started dragging
      */
     private void startDrag(CellData<T> cellData) {
+        startDrag(cellData, false);
+    }
+
+    /**
+     * Starts dragging the cell.
+     *
+     * @param cellData CellData that is started dragging
+     * @param isQuick  True if the pointer is already moving
+     */
+    private void startDrag(CellData<T> cellData, boolean isQuick) {
         if (isDragging) { // Another cell is being dragged
             return;
         }
+        if (isPopulating()) {
+            // Dragging needs the views of the cells that may be swapped or pushed
+            finishPopulation();
+        }
+        pressedCellData = null;
+        dragDownTime = downTime;
+        isDragStartLatencyPending = true;
+        if (touchPredictor != null) {
+            touchPredictor.reset();
+            touchPredictor.setMaxDistance(Math.min(widthPerCell, heightPerCell) / 2);
+        }
 
         if (listener != null) {
             listener.onDragStart();
@@ -952,16 +4473,44 @@ public class PigeonholeView<T> extends ViewGroup {
             ObjectAnimator animScaleX = ObjectAnimator.ofFloat(cellView, "scaleX", 1.25f);
             ObjectAnimator animScaleY = ObjectAnimator.ofFloat(cellView, "scaleY", 1.25f);
             animatorSet.setDuration(dragStartAnimationDuration);
-            animatorSet.playTogether(animX, animY, animScaleX, animScaleY);
-            animatorSet.start();
+            if (isQuick) {
+                // Animating x and y would hold the cell still while the pointer moves
+                animatorSet.playTogether(animScaleX, animScaleY);
+            } else {
+                animatorSet.playTogether(animX, animY, animScaleX, animScaleY);
+            }
+            startAnimator(animatorSet);
         } else {
             cellView.layout(
                     (int) newX,
                     (int) newY,
-                    (int) (newX + widthPerCell),
-                    (int) (newY + heightPerCell)
+                    (int) newX + getCellViewWidth(cellData),
+                    (int) newY + getCellViewHeight(cellData)
             );
         }
+        resizeDropTarget(cellData);
+
+        groupCells.clear();
+        if (selectionMode && selectedCells.size() > 1 && selectedCells.contains(cellData)
+                && !hasSpannedCell(selectedCells)) {
+            // Drag all selected cells together
+            int groupSize = selectedCells.size() - 1;
+            groupColOffsets = new int[groupSize];
+            groupRowOffsets = new int[groupSize];
+            int anchorPosition = cellData.getPosition();
+            for (int i = 0, l = selectedCells.size(); i < l; i++) {
+                CellData<T> selectedCellData = selectedCells.get(i);
+                if (selectedCellData == cellData) {
+                    continue;
+                }
+                int position = selectedCellData.getPosition();
+                int index = groupCells.size();
+                groupColOffsets[index] = position % numColumns - anchorPosition % numColumns;
+                groupRowOffsets[index] = position / numColumns - anchorPosition / numColumns;
+                groupCells.add(selectedCellData);
+                selectedCellData.getView().bringToFront();
+            }
+        }
 
         posX = newX;
         posY = newY;
@@ -975,6 +4524,10 @@ public class PigeonholeView<T> extends ViewGroup {
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
         final int action = MotionEventCompat.getActionMasked(ev);
+        if (pinchResizeHelper != null && !isDragging && pinchResizeHelper.onTouchEvent(ev)) {
+            // Take the gesture from the cell views
+            return true;
+        }
         switch (action) {
             case MotionEvent.ACTION_DOWN: {
                 try {
@@ -987,17 +4540,34 @@ public class PigeonholeView<T> extends ViewGroup {
                     lastTouchY = y;
                     // Save the ID of this pointer (for dragging)
                     activePointerId = MotionEventCompat.getPointerId(ev, 0);
+
+                    downX = x;
+                    downY = y;
+                    downTime = ev.getDownTime();
+                    pressedCellData = null;
+                    if (editable && dragStartDelay >= 0 && !isDragging && cellMap != null) {
+                        int position = getPositionForXY(x, y);
+                        pressedCellData = position >= 0 ? getCellAt(position) : null;
+                    }
                 } catch (IllegalArgumentException ex) { // pointerIndex out of range
                     Log.e(TAG, "IllegalArgumentException: " + ex.getMessage());
                     return false;
                 }
                 break;
             }
+            case MotionEvent.ACTION_MOVE: {
+                if (pressedCellData != null && !isDragging) {
+                    interceptQuickDrag(ev);
+                }
+                break;
+            }
             case MotionEvent.ACTION_UP: {
+                pressedCellData = null;
                 onMouseActionUp(ev);
                 break;
             }
             case MotionEvent.ACTION_CANCEL: {
+                pressedCellData = null;
                 cancelDrag();
                 break;
             }
@@ -1006,15 +4576,252 @@ public class PigeonholeView<T> extends ViewGroup {
         return isDragging;
     }
 
+    /**
+     * Starts dragging the pressed cell if the pointer has moved farther than
+     * the drag start slop after the drag start delay.
+     *
+     * @param ev ACTION_MOVE event
+     */
+    private void interceptQuickDrag(MotionEvent ev) {
+        final int pointerIndex = MotionEventCompat.findPointerIndex(ev, activePointerId);
+        if (pointerIndex < 0) {
+            return;
+        }
+        final float dx = MotionEventCompat.getX(ev, pointerIndex) - downX;
+        final float dy = MotionEventCompat.getY(ev, pointerIndex) - downY;
+        if (dx * dx + dy * dy <= dragStartSlop * dragStartSlop) {
+            return;
+        }
+        CellData<T> cellData = pressedCellData;
+        pressedCellData = null;
+        if (ev.getEventTime() - downTime < dragStartDelay || cellData.getView() == null) {
+            // Moved before the hold time; leave it to the cell view
+            return;
+        }
+        cellData.getView().cancelLongPress();
+        // lastTouchX/Y are kept at ACTION_DOWN so that the next move catches up with the pointer
+        startDrag(cellData, true);
+    }
+
+    void setDragCoordinator(DragCoordinator<T> dragCoordinator) {
+        this.dragCoordinator = dragCoordinator;
+    }
+
+    /**
+     * Detaches the dragged cell view from this view so that another
+     * PigeonholeView can take it over.
+     *
+     * @return CellData of the dragged cell
+     */
+    CellData<T> releaseDraggedCell() {
+        CellData<T> cellData = hoverCellData;
+        cancelSwapCandidate();
+        swapCandidateCellData = null;
+        currentHoverPosition = POSITION_INVALID;
+        dropTargetView.setVisibility(View.GONE);
+        editDropAreaView.setBackgroundResource(R.drawable.drop_area);
+        removeView(cellData.getView());
+        if (isForeignDrag) {
+            resizeDropTarget(null);
+            hoverCellData = null;
+            isForeignDrag = false;
+        }
+        return cellData;
+    }
+
+    /**
+     * Attaches the dragged cell view to this view.
+     *
+     * @param cellData  CellData of the dragged cell
+     * @param isForeign True if the cell belongs to another PigeonholeView
+     */
+    void acceptDraggedCell(CellData<T> cellData, boolean isForeign) {
+        addView(cellData.getView());
+        if (isForeign) {
+            hoverCellData = cellData;
+            isForeignDrag = true;
+            resizeDropTarget(cellData);
+        }
+        currentHoverPosition = POSITION_INVALID;
+    }
+
+    /**
+     * Takes back the dragged cell view from another PigeonholeView.
+     */
+    private void reclaimDraggedCell() {
+        if (dragCoordinator == null) {
+            return;
+        }
+        PigeonholeView<T> dragOwner = dragCoordinator.getDragOwner(this);
+        dragCoordinator.resetDragOwner();
+        if (dragOwner != this && hoverCellData != null) {
+            dragOwner.releaseDraggedCell();
+            acceptDraggedCell(hoverCellData, false);
+            View cellView = hoverCellData.getView();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                cellView.setX(posX);
+                cellView.setY(posY);
+            }
+        }
+    }
+
+    /**
+     * Places the cell dragged from another PigeonholeView into this view.
+     * The cell view is moved as is without being inflated or bound again.
+     * If the drop position is occupied, the occupant is moved to the minimum
+     * vacant position. If the drop position is not a cell, the dragged cell
+     * is placed at the minimum vacant position.
+     *
+     * @param source The view which the cell belongs to
+     * @param x      Pixels along the x-axis
+     * @param y      Pixels along the y-axis
+     * @return True if the cell has been placed. False if this view is full.
+     */
+    boolean dropForeignCell(PigeonholeView<T> source, float x, float y, float viewX, float viewY) {
+        CellData<T> cellData = hoverCellData;
+        int dropPosition = getDropPosition(cellData, x, y, viewX, viewY);
+        if (dropPosition == POSITION_DROP_AREA) {
+            dropPosition = POSITION_INVALID;
+        }
+        CellData<T> occupant = null;
+        int occupantPosition = POSITION_INVALID;
+        if (dropPosition != POSITION_INVALID && !isVacantFor(cellData, dropPosition)) {
+            occupant = getCellAt(dropPosition);
+            if (occupant != null && !occupant.isSpanned() && !cellData.isSpanned()) {
+                occupantPosition = getMinimumVacantPosition();
+            }
+            if (occupantPosition == POSITION_INVALID) {
+                occupant = null;
+                dropPosition = POSITION_INVALID;
+            }
+        }
+        if (dropPosition == POSITION_INVALID) {
+            dropPosition = occupancyGrid.findFirstFit(cellData.getColumnSpan(), cellData.getRowSpan());
+        }
+        if (dropPosition == POSITION_INVALID) {
+            return false;
+        }
+        if (this.provider == null) {
+            throw new IllegalStateException("DataProvider is null");
+        }
+
+        source.removeTransferredCell(cellData);
+        dragCoordinator.notifyTransfer(source, this, cellData.getObject());
+
+        releaseDraggedCellState();
+        if (occupant != null) {
+            cancelSwapCandidate();
+            moveCell(occupant, occupantPosition);
+        }
+        cellData.setPosition(dropPosition);
+        putCell(cellData);
+        if (idMap != null) {
+            idMap.put(getItemId(cellData), cellData);
+        }
+        setupCellView(cellData);
+        if (labelIndex != null) {
+            labelIndex.add(cellData, getLabel(cellData.getObject()));
+        }
+        boolean isMatched = isFiltering() && matchesFilter(cellData);
+        cellData.setFilterMatched(isMatched);
+        if (isMatched) {
+            filterMatchCount++;
+        }
+        // The view keeps the alpha of the source view, which may have another filter
+        ViewCompat.setAlpha(cellData.getView(), isFiltering() && !isMatched ? filterDimAlpha : 1f);
+        writeViewPosition(cellData.getObject(), POSITION_INVALID, dropPosition);
+        moveCellView(cellData, dropPosition);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            AnimatorSet animatorSet = new AnimatorSet();
+            ObjectAnimator animScaleX = ObjectAnimator.ofFloat(cellData.getView(), "scaleX", 1.0f);
+            ObjectAnimator animScaleY = ObjectAnimator.ofFloat(cellData.getView(), "scaleY", 1.0f);
+            animatorSet.playTogether(animScaleX, animScaleY);
+            startAnimator(animatorSet);
+        }
+
+        notifyReorder();
+        return true;
+    }
+
+    private void releaseDraggedCellState() {
+        resizeDropTarget(null);
+        hoverCellData = null;
+        isForeignDrag = false;
+        swapCandidateCellData = null;
+        currentHoverPosition = POSITION_INVALID;
+        dropTargetView.setVisibility(View.GONE);
+    }
+
+    /**
+     * Forgets the cell which has been moved to another PigeonholeView.
+     *
+     * @param cellData CellData of the moved cell
+     */
+    void removeTransferredCell(CellData<T> cellData) {
+        recordRemoval(cellData);
+        removeCell(cellData);
+        selectedCells.remove(cellData);
+        dirtyCells.remove(cellData);
+        removeLiveValue(cellData);
+        if (isFiltering() && cellData.isFilterMatched()) {
+            filterMatchCount--;
+        }
+        if (labelIndex != null) {
+            labelIndex.remove(cellData);
+        }
+        cellData.getView().setSelected(false);
+        if (idMap != null) {
+            int index = idMap.indexOfValue(cellData);
+            if (index >= 0) {
+                idMap.removeAt(index);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the list contains a spanning cell or not.
+     *
+     * @param cells CellData list
+     * @return True if a spanning cell is found. Otherwise false.
+     */
+    private boolean hasSpannedCell(List<CellData<T>> cells) {
+        for (int i = 0, l = cells.size(); i < l; i++) {
+            if (cells.get(i).isSpanned()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resizes the drop target to the size of the cell.
+     *
+     * @param cellData The dragged cell, or null to reset the size
+     */
+    private void resizeDropTarget(CellData<T> cellData) {
+        int w = cellData != null ? getCellViewWidth(cellData) : (int) widthPerCell;
+        int h = cellData != null ? getCellViewHeight(cellData) : (int) heightPerCell;
+        if (dropTargetView.getWidth() != w || dropTargetView.getHeight() != h) {
+            dropTargetView.layout(0, 0, w, h);
+        }
+    }
+
     private void resetDragState() {
+        resizeDropTarget(null);
         hoverCellData = null;
+        groupCells.clear();
         swapCandidateCellData = null;
         currentHoverPosition = POSITION_INVALID;
         activePointerId = -1; // MotionEvent.INVALID_POINTER_ID;
+        if (!isDragging && !mutationQueue.isEmpty() && isMutationDrainScheduled.compareAndSet(false, true)) {
+            // Apply the mutations posted during the drag
+            ViewCompat.postOnAnimation(this, mutationDrainRunnable);
+        }
     }
 
     private void cancelDrag() {
         if (isDragging) {
+            reclaimDraggedCell();
             cancelMove();
             if (listener != null) {
                 listener.onDragEnd();
@@ -1056,7 +4863,7 @@ public class PigeonholeView<T> extends ViewGroup {
             ObjectAnimator animX = ObjectAnimator.ofFloat(swapCandidateView, "x", targetPoint.x);
             ObjectAnimator animY = ObjectAnimator.ofFloat(swapCandidateView, "y", targetPoint.y);
             animatorSet.playTogether(animX, animY);
-            animatorSet.start();
+            startAnimator(animatorSet);
         } else {
             swapCandidateView.layout(
                     targetPoint.x,
@@ -1101,7 +4908,7 @@ public class PigeonholeView<T> extends ViewGroup {
             ObjectAnimator animX = ObjectAnimator.ofFloat(swapCandidateView, "x", targetPoint.x);
             ObjectAnimator animY = ObjectAnimator.ofFloat(swapCandidateView, "y", targetPoint.y);
             animatorSet.playTogether(animX, animY);
-            animatorSet.start();
+            startAnimator(animatorSet);
         } else {
             swapCandidateView.layout(
                     targetPoint.x,
@@ -1112,9 +4919,117 @@ public class PigeonholeView<T> extends ViewGroup {
         }
     }
 
+    /**
+     * Passes the pointer position to the view which the dragged cell is over.
+     *
+     * @param x       Pixels along the x-axis
+     * @param y       Pixels along the y-axis
+     * @param offsetX Predicted offset along the x-axis
+     * @param offsetY Predicted offset along the y-axis
+     */
+    private void dispatchDragHover(float x, float y, float offsetX, float offsetY) {
+        PigeonholeView<T> dragOwner = this;
+        if (dragCoordinator != null && groupCells.isEmpty()) {
+            dragOwner = dragCoordinator.updateDragOwner(this, x, y);
+        }
+        if (dragOwner == this) {
+            dragHover(x, y, posX, posY, offsetX, offsetY);
+        } else { // The cell is over another PigeonholeView
+            Point offset = dragCoordinator.getOffset(this, dragOwner);
+            dragOwner.dragHover(x + offset.x, y + offset.y, posX + offset.x, posY + offset.y, offsetX, offsetY);
+        }
+    }
+
+    /**
+     * Moves the dragged cell and updates the drop target.
+     *
+     * @param x       Pointer position along the x-axis
+     * @param y       Pointer position along the y-axis
+     * @param viewX   New x position of the dragged cell view
+     * @param viewY   New y position of the dragged cell view
+     * @param offsetX Predicted offset along the x-axis which is applied only when drawing
+     * @param offsetY Predicted offset along the y-axis which is applied only when drawing
+     */
+    void dragHover(float x, float y, float viewX, float viewY, float offsetX, float offsetY) {
+        View cellView = hoverCellData.getView();
+        float drawX = viewX + offsetX;
+        float drawY = viewY + offsetY;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            cellView.setX(drawX);
+            cellView.setY(drawY);
+        } else {
+            cellView.layout((int) drawX, (int) drawY, (int) drawX + getCellViewWidth(hoverCellData), (int) drawY + getCellViewHeight(hoverCellData));
+        }
+        moveGroupCells(offsetX, offsetY);
+        int hoverPosition = getDropPosition(hoverCellData, x, y, viewX, viewY);
+        if (hoverPosition != currentHoverPosition) {
+            cancelSwapCandidate();
+            swapCandidateCellData = null;
+        }
+        if (hoverPosition == POSITION_DROP_AREA && !isForeignDrag) {
+            editDropAreaView.setBackgroundResource(R.drawable.drop_area_highlight);
+        } else {
+            editDropAreaView.setBackgroundResource(R.drawable.drop_area);
+        }
+        if (hoverPosition >= 0 && (hoverPosition == hoverCellData.getPosition() || canDropAt(hoverCellData, hoverPosition))) {
+            // Show the drop target
+            Point hoverXY = getXYForPosition(hoverPosition);
+            dropTargetView.setVisibility(View.VISIBLE);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                dropTargetView.setX(hoverXY.x);
+                dropTargetView.setY(hoverXY.y);
+            } else {
+                dropTargetView.layout(
+                        hoverXY.x,
+                        hoverXY.y,
+                        hoverXY.x + getCellViewWidth(hoverCellData),
+                        hoverXY.y + getCellViewHeight(hoverCellData)
+                );
+            }
+
+            CellData<T> dropTargetCellData = getCellAt(hoverPosition);
+            if (dropTargetCellData != null && dropTargetCellData != hoverCellData && !dropTargetCellData.isSpanned()
+                    && !hoverCellData.isSpanned() && groupCells.isEmpty() && !isForeignDrag) {
+                if (hoverPosition != currentHoverPosition) {
+                    // Move the drop target cell
+                    swapCandidateCellData = dropTargetCellData;
+                    swapCandidateEffect();
+                }
+            }
+        } else {
+            // Hide the drop target
+            dropTargetView.setVisibility(View.GONE);
+        }
+        currentHoverPosition = hoverPosition;
+    }
+
+    /**
+     * Moves the cells being dragged along with hoverCellData.
+     *
+     * @param offsetX Predicted offset along the x-axis
+     * @param offsetY Predicted offset along the y-axis
+     */
+    private void moveGroupCells(float offsetX, float offsetY) {
+        for (int i = 0, l = groupCells.size(); i < l; i++) {
+            View groupCellView = groupCells.get(i).getView();
+            float groupX = posX + offsetX + groupColOffsets[i] * widthPerCell;
+            float groupY = posY + offsetY + groupRowOffsets[i] * heightPerCell;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                groupCellView.setX(groupX);
+                groupCellView.setY(groupY);
+            } else {
+                groupCellView.layout((int) groupX, (int) groupY, (int) (groupX + widthPerCell), (int) (groupY + heightPerCell));
+            }
+        }
+    }
+
     @Override
     public boolean onTouchEvent(@NonNull MotionEvent ev) {
         final int action = MotionEventCompat.getActionMasked(ev);
+        if (pinchResizeHelper != null && !isDragging
+                && (pinchResizeHelper.onTouchEvent(ev) || pinchResizeHelper.isPinching())) {
+            return true;
+        }
         switch (action) {
             case MotionEvent.ACTION_DOWN: {
                 try {
@@ -1147,53 +5062,25 @@ public class PigeonholeView<T> extends ViewGroup {
                         posX += dx;
                         posY += dy;
                         if (hoverCellData != null) { // User is dragging a cell
-                            View cellView = hoverCellData.getView();
-                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                                cellView.setX(posX);
-                                cellView.setY(posY);
-                            } else {
-                                cellView.layout((int) posX, (int) posY, (int) (posX + widthPerCell), (int) (posY + heightPerCell));
-                            }
-                            int hoverPosition = getPositionForXY(x, y);
-                            if (hoverPosition != currentHoverPosition) {
-                                cancelSwapCandidate();
-                                swapCandidateCellData = null;
-                            }
-                            if (hoverPosition == POSITION_DROP_AREA) {
-                                editDropAreaView.setBackgroundResource(R.drawable.drop_area_highlight);
-                            } else {
-                                editDropAreaView.setBackgroundResource(R.drawable.drop_area);
-                            }
-                            Point hoverPoint = getColRowForXY(x, y);
-                            if (hoverPoint != null) {
-                                // Show the drop target
-                                Point hoverXY = getXYForColRow(hoverPoint.x, hoverPoint.y);
-                                dropTargetView.setVisibility(View.VISIBLE);
-                                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                                    dropTargetView.setX(hoverXY.x);
-                                    dropTargetView.setY(hoverXY.y);
-                                } else {
-                                    dropTargetView.layout(
-                                            hoverXY.x,
-                                            hoverXY.y,
-                                            (int) (hoverXY.x + widthPerCell),
-                                            (int) (hoverXY.y + heightPerCell)
-                                    );
-                                }
-
-                                CellData<T> dropTargetCellData = cellMap.get(hoverPosition);
-                                if (dropTargetCellData != null) {
-                                    if (hoverPosition != currentHoverPosition) {
-                                        // Move the drop target cell
-                                        swapCandidateCellData = dropTargetCellData;
-                                        swapCandidateEffect();
-                                    }
+                            float offsetX = 0;
+                            float offsetY = 0;
+                            if (touchPredictor != null) {
+                                touchPredictor.addMovement(ev, pointerIndex);
+                                long now = SystemClock.uptimeMillis();
+                                offsetX = touchPredictor.getOffsetX(now);
+                                offsetY = touchPredictor.getOffsetY(now);
+                                // Settle the offset if no more move events come
+                                removeCallbacks(predictionSettleRunnable);
+                                if (offsetX != 0 || offsetY != 0) {
+                                    ViewCompat.postOnAnimationDelayed(this, predictionSettleRunnable,
+                                            TouchPredictor.STOP_THRESHOLD + 1);
                                 }
-                            } else {
-                                // Hide the drop target
-                                dropTargetView.setVisibility(View.GONE);
                             }
-                            currentHoverPosition = hoverPosition;
+                            dispatchDragHover(x, y, offsetX, offsetY);
+                            if (isDragStartLatencyPending) {
+                                isDragStartLatencyPending = false;
+                                ViewCompat.postOnAnimation(this, dragStartLatencyRunnable);
+                            }
                         }
 
                         invalidate(); // TODO: Is this necessary?
@@ -1239,6 +5126,11 @@ public class PigeonholeView<T> extends ViewGroup {
     private void init(Context context) {
         this.context = context;
 
+        if (dragStartSlop < 0) {
+            dragStartSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        }
+        setPinchToResizeEnabled(pinchToResize);
+
         textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         textPaint.setColor(Color.BLACK);
         textPaint.setTextSize(60);
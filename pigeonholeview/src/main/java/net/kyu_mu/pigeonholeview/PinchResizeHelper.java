@@ -0,0 +1,63 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+
+/**
+ * Detects pinch gestures for PigeonholeView. ScaleGestureDetector is
+ * available from API level 8, so it is kept in this class which is only
+ * loaded on those versions.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+class PinchResizeHelper {
+    private final PigeonholeView<?> view;
+    private final ScaleGestureDetector detector;
+    private float scale = 1f;
+    private boolean isPinching = false;
+
+    PinchResizeHelper(Context context, PigeonholeView<?> pigeonholeView) {
+        this.view = pigeonholeView;
+        this.detector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                if (!view.canStartPinch()) {
+                    return false;
+                }
+                isPinching = true;
+                scale = 1f;
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                scale *= detector.getScaleFactor();
+                scale = view.onPinchScale(scale, detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+
+            @Override
+            public void onScaleEnd(ScaleGestureDetector detector) {
+                isPinching = false;
+                view.onPinchEnd(scale);
+                scale = 1f;
+            }
+        });
+    }
+
+    /**
+     * Passes the event to the detector.
+     *
+     * @param ev The event
+     * @return True if a pinch is in progress
+     */
+    boolean onTouchEvent(MotionEvent ev) {
+        detector.onTouchEvent(ev);
+        return isPinching;
+    }
+
+    boolean isPinching() {
+        return isPinching;
+    }
+}
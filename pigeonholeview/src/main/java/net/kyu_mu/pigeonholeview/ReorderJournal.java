@@ -0,0 +1,424 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.support.annotation.NonNull;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Persists the view positions of cells as a snapshot file and an
+ * append-only journal. Each reorder is appended to the journal as a small
+ * binary record instead of rewriting all positions, and the journal is
+ * folded into a new snapshot on a background thread when it grows.
+ * The last reorders are kept in memory for undo and redo.
+ *
+ * Cells are identified by the ids from PigeonholeView.StableIdDataProvider.
+ * Call load() once before using getPosition() in DataProvider.getViewPosition().
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class ReorderJournal {
+    public static final String TAG = ReorderJournal.class.getSimpleName();
+
+    private static final int SNAPSHOT_MAGIC = 0x50484a53; // "PHJS"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int DEFAULT_MAX_UNDO = 20;
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 256;
+    private static final int ENTRY_SIZE = 12; // id and position
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final int maxUndo;
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private LongSparseArray<Integer> positions = new LongSparseArray<>();
+    private ExecutorService executor; // runs all file operations in order
+    private int journalRecordCount = 0;
+    private Transaction pending;
+    private ArrayList<Transaction> undoStack = new ArrayList<>();
+    private ArrayList<Transaction> redoStack = new ArrayList<>();
+
+    /**
+     * Position changes made by one reorder.
+     */
+    static class Transaction {
+        private final ArrayList<long[]> records = new ArrayList<>(); // {id, from, to}
+        private boolean isUndoable = true;
+
+        int size() {
+            return records.size();
+        }
+
+        long getId(int index) {
+            return records.get(index)[0];
+        }
+
+        int getFromPosition(int index) {
+            return (int) records.get(index)[1];
+        }
+
+        int getToPosition(int index) {
+            return (int) records.get(index)[2];
+        }
+    }
+
+    /**
+     * Creates a ReorderJournal which keeps the last 20 reorders for undo.
+     *
+     * @param file Snapshot file. The journal is written to the same path with ".journal" appended.
+     */
+    public ReorderJournal(File file) {
+        this(file, DEFAULT_MAX_UNDO);
+    }
+
+    /**
+     * Creates a ReorderJournal.
+     *
+     * @param file    Snapshot file. The journal is written to the same path with ".journal" appended.
+     * @param maxUndo Maximum number of reorders that can be undone
+     */
+    public ReorderJournal(File file, int maxUndo) {
+        this.snapshotFile = file;
+        this.journalFile = new File(file.getPath() + ".journal");
+        this.maxUndo = maxUndo;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sets the number of journal records after which the journal is folded
+     * into a new snapshot.
+     *
+     * @param compactionThreshold The number of records
+     */
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Reads the snapshot and replays the journal onto it. A transaction
+     * which was partially written when the process died is ignored, and
+     * the journal is truncated after the last complete transaction so that
+     * later records are appended to a valid journal. Call this before any
+     * reorder is recorded.
+     */
+    public void load() {
+        positions.clear();
+        journalRecordCount = 0;
+        long snapshotLength = snapshotFile.length();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+            try {
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                    Log.e(TAG, "Unknown snapshot format: " + snapshotFile);
+                } else {
+                    int count = in.readInt();
+                    if (count < 0 || count > (snapshotLength - 12) / ENTRY_SIZE) {
+                        throw new IOException("Invalid entry count: " + count);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        long id = in.readLong();
+                        positions.put(id, in.readInt());
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            // No snapshot yet
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read snapshot: " + e.getMessage());
+            positions.clear();
+        }
+
+        long journalLength = journalFile.length();
+        long validLength = 0; // end of the last complete transaction
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                while (journalLength - validLength >= 4) {
+                    int count = in.readInt();
+                    if (count < 0 || count > (journalLength - validLength - 4) / ENTRY_SIZE) {
+                        break; // torn or corrupted count
+                    }
+                    for (int i = 0; i < count; i++) {
+                        long id = in.readLong();
+                        applyPosition(id, in.readInt());
+                    }
+                    journalRecordCount += count;
+                    validLength += 4 + (long) count * ENTRY_SIZE;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            // No journal yet
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read journal: " + e.getMessage());
+        }
+        if (validLength < journalLength) {
+            Log.w(TAG, "Discarding " + (journalLength - validLength) + " bytes of incomplete journal");
+            truncateJournal(validLength);
+        }
+    }
+
+    /**
+     * Returns the saved view position for the item.
+     *
+     * @param itemId The stable id of the item
+     * @return The view position, or PigeonholeView.POSITION_INVALID if unknown
+     */
+    public int getPosition(long itemId) {
+        Integer position = positions.get(itemId);
+        return position != null ? position : PigeonholeView.POSITION_INVALID;
+    }
+
+    /**
+     * Returns whether the last reorder can be undone or not.
+     *
+     * @return True if undo is available. Otherwise false.
+     */
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    /**
+     * Returns whether the last undone reorder can be redone or not.
+     *
+     * @return True if redo is available. Otherwise false.
+     */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Forgets the reorders kept for undo and redo.
+     */
+    public void clearHistory() {
+        undoStack.clear();
+        redoStack.clear();
+    }
+
+    /**
+     * Folds the journal into a new snapshot on the background thread.
+     */
+    public void compact() {
+        // Copy the positions so that the background thread does not see later changes
+        final long[] ids = new long[positions.size()];
+        final int[] snapshotPositions = new int[positions.size()];
+        for (int i = 0, l = positions.size(); i < l; i++) {
+            ids[i] = positions.keyAt(i);
+            snapshotPositions[i] = positions.valueAt(i);
+        }
+        journalRecordCount = 0;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(ids, snapshotPositions);
+            }
+        });
+    }
+
+    /**
+     * Stops the background thread. Writes which have been queued already
+     * are still finished on it, but this method does not wait for them.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Adds a position change to the current reorder.
+     *
+     * @param itemId      The stable id of the item
+     * @param oldPosition The position before the change, or POSITION_INVALID if the item is added
+     * @param newPosition The position after the change, or POSITION_INVALID if the item is removed
+     */
+    void record(long itemId, int oldPosition, int newPosition) {
+        if (pending == null) {
+            pending = new Transaction();
+        }
+        pending.records.add(new long[]{itemId, oldPosition, newPosition});
+        if (oldPosition == PigeonholeView.POSITION_INVALID || newPosition == PigeonholeView.POSITION_INVALID) {
+            pending.isUndoable = false;
+        }
+    }
+
+    /**
+     * Appends the current reorder to the journal. PigeonholeView calls
+     * this once per onReorder().
+     */
+    void commit() {
+        Transaction transaction = pending;
+        pending = null;
+        if (transaction == null) {
+            return;
+        }
+        append(transaction, false);
+        redoStack.clear();
+        if (transaction.isUndoable) {
+            undoStack.add(transaction);
+            if (undoStack.size() > maxUndo) {
+                undoStack.remove(0);
+            }
+        } else {
+            // Positions before an addition or a removal cannot be restored
+            undoStack.clear();
+        }
+    }
+
+    Transaction peekUndo() {
+        return undoStack.isEmpty() ? null : undoStack.get(undoStack.size() - 1);
+    }
+
+    Transaction peekRedo() {
+        return redoStack.isEmpty() ? null : redoStack.get(redoStack.size() - 1);
+    }
+
+    /**
+     * Appends the positions restored by undo and moves the reorder to the redo stack.
+     */
+    void commitUndo() {
+        Transaction transaction = undoStack.remove(undoStack.size() - 1);
+        append(transaction, true);
+        redoStack.add(transaction);
+    }
+
+    /**
+     * Appends the positions restored by redo and moves the reorder to the undo stack.
+     */
+    void commitRedo() {
+        Transaction transaction = redoStack.remove(redoStack.size() - 1);
+        append(transaction, false);
+        undoStack.add(transaction);
+    }
+
+    private void append(Transaction transaction, boolean isReverse) {
+        int count = transaction.size();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + count * 12);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                int index = isReverse ? count - 1 - i : i;
+                long id = transaction.getId(index);
+                int position = isReverse ? transaction.getFromPosition(index) : transaction.getToPosition(index);
+                out.writeLong(id);
+                out.writeInt(position);
+                applyPosition(id, position);
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+        }
+
+        final byte[] record = bytes.toByteArray();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeJournal(record);
+            }
+        });
+
+        journalRecordCount += count;
+        if (journalRecordCount >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    private void applyPosition(long id, int position) {
+        if (position == PigeonholeView.POSITION_INVALID) {
+            positions.remove(id);
+        } else {
+            positions.put(id, position);
+        }
+    }
+
+    /**
+     * Cuts the journal at the length.
+     *
+     * @param length New length in bytes
+     */
+    private void truncateJournal(long length) {
+        try {
+            RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+            try {
+                file.setLength(length);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to truncate journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the record to the journal. Called on the background thread.
+     *
+     * @param record Serialized transaction
+     */
+    private void writeJournal(byte[] record) {
+        try {
+            FileOutputStream out = new FileOutputStream(journalFile, true);
+            try {
+                out.write(record);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a new snapshot and empties the journal. Called on the background
+     * thread. If the process dies before the journal is emptied, replaying
+     * the journal onto the new snapshot gives the same positions.
+     *
+     * @param ids               Item ids
+     * @param snapshotPositions The view position for each id
+     */
+    private void writeSnapshot(long[] ids, int[] snapshotPositions) {
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(ids.length);
+                for (int i = 0; i < ids.length; i++) {
+                    out.writeLong(ids[i]);
+                    out.writeInt(snapshotPositions[i]);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(snapshotFile)) {
+                Log.e(TAG, "Failed to replace snapshot: " + snapshotFile);
+                return;
+            }
+            new FileOutputStream(journalFile).close(); // truncate
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write snapshot: " + e.getMessage());
+        }
+    }
+}
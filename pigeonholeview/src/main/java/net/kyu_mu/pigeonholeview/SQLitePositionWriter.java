@@ -0,0 +1,218 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves view positions to a SQLite table on a background thread.
+ * write() only queues the position, so it is cheap enough to call for every
+ * moved cell on the UI thread. Repeated writes for the same item are
+ * coalesced, and the queued positions are saved in a single transaction
+ * with a prepared statement.
+ *
+ * Pass this to PigeonholeView.setPositionWriter() to save positions without
+ * doing it in DataProvider.setViewPosition(). The writer is closed when the
+ * view is detached from the window, and is started again if more positions
+ * are written.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class SQLitePositionWriter {
+    public static final String TAG = SQLitePositionWriter.class.getSimpleName();
+
+    private static final long THREAD_KEEP_ALIVE = 1000; // milliseconds
+
+    private final SQLiteDatabase database;
+    private final String sql;
+    private final Object lock = new Object();
+    private PositionBuffer pending = new PositionBuffer(); // guarded by lock
+    private PositionBuffer writing = new PositionBuffer(); // used only on the background thread
+    private boolean isFlushScheduled = false; // guarded by lock
+    private SQLiteStatement statement; // used only on the background thread
+    private final ExecutorService executor;
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushPending();
+        }
+    };
+
+    /**
+     * Positions sorted by id in primitive arrays, so that queuing a position
+     * does not box it.
+     */
+    private static class PositionBuffer {
+        private long[] ids = new long[16];
+        private int[] positions = new int[16];
+        private int size = 0;
+
+        void put(long id, int position) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] < id) {
+                    low = mid + 1;
+                } else if (ids[mid] > id) {
+                    high = mid - 1;
+                } else {
+                    positions[mid] = position; // coalesce
+                    return;
+                }
+            }
+            if (size == ids.length) {
+                long[] newIds = new long[size * 2];
+                int[] newPositions = new int[size * 2];
+                System.arraycopy(ids, 0, newIds, 0, size);
+                System.arraycopy(positions, 0, newPositions, 0, size);
+                ids = newIds;
+                positions = newPositions;
+            }
+            System.arraycopy(ids, low, ids, low + 1, size - low);
+            System.arraycopy(positions, low, positions, low + 1, size - low);
+            ids[low] = id;
+            positions[low] = position;
+            size++;
+        }
+    }
+
+    /**
+     * Creates a SQLitePositionWriter which runs
+     * "UPDATE table SET positionColumn = ? WHERE idColumn = ?".
+     *
+     * @param database       Writable database
+     * @param table          Table name
+     * @param idColumn       Name of the column for stable ids
+     * @param positionColumn Name of the column for view positions
+     */
+    public SQLitePositionWriter(SQLiteDatabase database, String table, String idColumn, String positionColumn) {
+        this.database = database;
+        this.sql = "UPDATE " + table + " SET " + positionColumn + " = ? WHERE " + idColumn + " = ?";
+        // At most one thread, which exits when it has been idle for a while
+        this.executor = new ThreadPoolExecutor(0, 1, THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues the position of the item. If a position for the item is already
+     * queued, it is replaced.
+     *
+     * @param id       The id of the item
+     * @param position The new view position
+     */
+    public void write(long id, int position) {
+        synchronized (lock) {
+            pending.put(id, position);
+            if (isFlushScheduled) {
+                return;
+            }
+            isFlushScheduled = true;
+        }
+        executor.execute(flushRunnable);
+    }
+
+    /**
+     * Returns the number of items whose positions are queued and not yet
+     * taken by the background thread.
+     *
+     * @return The number of items
+     */
+    int getPendingCount() {
+        synchronized (lock) {
+            return pending.size;
+        }
+    }
+
+    /**
+     * Saves the queued positions and waits until they are written.
+     * Do not call this on the UI thread while a large batch is queued.
+     */
+    public void flush() {
+        Future<?> future = executor.submit(flushRunnable);
+        try {
+            future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(TAG, "Failed to flush: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the queued positions and releases the prepared statement on the
+     * background thread. This method does not wait for the positions to be
+     * written. The statement is prepared again if more positions are written,
+     * and the thread exits when it has nothing to do.
+     */
+    public void close() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flushPending();
+                if (statement != null) {
+                    statement.close();
+                    statement = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the queued positions in a transaction. Called on the background thread.
+     */
+    private void flushPending() {
+        PositionBuffer positions;
+        synchronized (lock) {
+            isFlushScheduled = false;
+            if (pending.size == 0) {
+                return;
+            }
+            // Swap the buffers so that write() is not blocked during the transaction
+            positions = pending;
+            pending = writing;
+            writing = positions;
+        }
+        try {
+            if (statement == null) {
+                statement = database.compileStatement(sql);
+            }
+            database.beginTransaction();
+            try {
+                for (int i = 0; i < positions.size; i++) {
+                    statement.bindLong(1, positions.positions[i]);
+                    statement.bindLong(2, positions.ids[i]);
+                    statement.execute();
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to write positions: " + e.getMessage());
+        } finally {
+            positions.size = 0;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.os.Build;
+import android.support.v4.view.MotionEventCompat;
+import android.view.MotionEvent;
+
+/**
+ * Predicts how far the pointer will have moved by the time the next frame
+ * is displayed, from the velocity of recent touch samples. The velocity is
+ * smoothed across events and the offset is clamped so that the dragged
+ * cell does not overshoot when the pointer stops or turns.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+class TouchPredictor {
+    private static final int MAX_SAMPLES = 8;
+    private static final long SAMPLE_WINDOW = 50; // milliseconds
+    static final long STOP_THRESHOLD = 40; // no samples for this long means the pointer has stopped
+    private static final float SMOOTHING = 0.5f; // weight of the previous velocity
+
+    private final long[] times = new long[MAX_SAMPLES];
+    private final float[] xs = new float[MAX_SAMPLES];
+    private final float[] ys = new float[MAX_SAMPLES];
+    private int count = 0;
+    private int head = 0; // index of the next sample
+    private float velocityX = 0; // pixels per millisecond
+    private float velocityY = 0;
+    private long predictionTime;
+    private float maxDistance;
+
+    /**
+     * @param predictionTime How far ahead to predict, in milliseconds
+     * @param maxDistance    Maximum distance of the predicted offset in pixels
+     */
+    TouchPredictor(long predictionTime, float maxDistance) {
+        this.predictionTime = predictionTime;
+        this.maxDistance = maxDistance;
+    }
+
+    void setPredictionTime(long predictionTime) {
+        this.predictionTime = predictionTime;
+    }
+
+    void setMaxDistance(float maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    void reset() {
+        count = 0;
+        head = 0;
+        velocityX = 0;
+        velocityY = 0;
+    }
+
+    /**
+     * Adds the historical samples and the current sample of the pointer.
+     *
+     * @param ev           ACTION_MOVE event
+     * @param pointerIndex Index of the pointer
+     */
+    void addMovement(MotionEvent ev, int pointerIndex) {
+        // Historical samples of other pointers need API level 5, where multi-touch was added
+        boolean isMultiTouch = Build.VERSION.SDK_INT >= Build.VERSION_CODES.ECLAIR;
+        for (int h = 0, l = ev.getHistorySize(); h < l; h++) {
+            if (isMultiTouch) {
+                addSample(ev.getHistoricalEventTime(h), ev.getHistoricalX(pointerIndex, h), ev.getHistoricalY(pointerIndex, h));
+            } else {
+                addSample(ev.getHistoricalEventTime(h), ev.getHistoricalX(h), ev.getHistoricalY(h));
+            }
+        }
+        addSample(ev.getEventTime(), MotionEventCompat.getX(ev, pointerIndex), MotionEventCompat.getY(ev, pointerIndex));
+        updateVelocity();
+    }
+
+    /**
+     * Returns the predicted offset along the x-axis from the last sample.
+     *
+     * @param now Current uptime in milliseconds
+     * @return Pixels
+     */
+    float getOffsetX(long now) {
+        return getOffset(now, true);
+    }
+
+    /**
+     * Returns the predicted offset along the y-axis from the last sample.
+     *
+     * @param now Current uptime in milliseconds
+     * @return Pixels
+     */
+    float getOffsetY(long now) {
+        return getOffset(now, false);
+    }
+
+    private void addSample(long time, float x, float y) {
+        if (count > 0 && time <= times[(head + MAX_SAMPLES - 1) % MAX_SAMPLES]) {
+            return; // out of order or duplicate
+        }
+        times[head] = time;
+        xs[head] = x;
+        ys[head] = y;
+        head = (head + 1) % MAX_SAMPLES;
+        if (count < MAX_SAMPLES) {
+            count++;
+        }
+    }
+
+    /**
+     * Fits a line to the samples in the window by least squares and blends
+     * its slope with the previous velocity.
+     */
+    private void updateVelocity() {
+        if (count < 2) {
+            return;
+        }
+        int newest = (head + MAX_SAMPLES - 1) % MAX_SAMPLES;
+        long newestTime = times[newest];
+        int n = 0;
+        float sumT = 0, sumX = 0, sumY = 0, sumTT = 0, sumTX = 0, sumTY = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (newest + MAX_SAMPLES - i) % MAX_SAMPLES;
+            float t = times[index] - newestTime; // <= 0
+            if (-t > SAMPLE_WINDOW) {
+                break;
+            }
+            sumT += t;
+            sumX += xs[index];
+            sumY += ys[index];
+            sumTT += t * t;
+            sumTX += t * xs[index];
+            sumTY += t * ys[index];
+            n++;
+        }
+        float denominator = n * sumTT - sumT * sumT;
+        if (n < 2 || denominator == 0) {
+            velocityX = 0;
+            velocityY = 0;
+            return;
+        }
+        float rawVelocityX = (n * sumTX - sumT * sumX) / denominator;
+        float rawVelocityY = (n * sumTY - sumT * sumY) / denominator;
+        if (rawVelocityX * velocityX + rawVelocityY * velocityY < 0) {
+            // The pointer has turned; do not keep predicting the old direction
+            velocityX = rawVelocityX;
+            velocityY = rawVelocityY;
+        } else {
+            velocityX = SMOOTHING * velocityX + (1 - SMOOTHING) * rawVelocityX;
+            velocityY = SMOOTHING * velocityY + (1 - SMOOTHING) * rawVelocityY;
+        }
+    }
+
+    private float getOffset(long now, boolean isX) {
+        if (count < 2) {
+            return 0;
+        }
+        long age = now - times[(head + MAX_SAMPLES - 1) % MAX_SAMPLES];
+        if (age > STOP_THRESHOLD) {
+            return 0;
+        }
+        long horizon = Math.min(Math.max(age, 0) + predictionTime, predictionTime * 2);
+        float offsetX = velocityX * horizon;
+        float offsetY = velocityY * horizon;
+        float distance = (float) Math.sqrt(offsetX * offsetX + offsetY * offsetY);
+        if (distance > maxDistance) {
+            float scale = maxDistance / distance;
+            offsetX *= scale;
+            offsetY *= scale;
+        }
+        return isX ? offsetX : offsetY;
+    }
+}
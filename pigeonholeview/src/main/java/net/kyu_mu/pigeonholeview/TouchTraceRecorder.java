@@ -0,0 +1,156 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.support.v4.view.MotionEventCompat;
+import android.view.MotionEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records the touch events which PigeonholeView receives, so that a drag
+ * reported as janky can be replayed later with TouchTraceReplayer.
+ * Only the first pointer is recorded. Each event takes 13 bytes in the file.
+ *
+ * Pass this to PigeonholeView.setTouchTraceRecorder() and call save()
+ * when the interaction of interest is over.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class TouchTraceRecorder {
+    public static final String TAG = TouchTraceRecorder.class.getSimpleName();
+
+    static final int MAGIC = 0x50485454; // "PHTT"
+    static final int VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] actions = new byte[INITIAL_CAPACITY];
+    private int[] times = new int[INITIAL_CAPACITY]; // milliseconds from the first event
+    private float[] xs = new float[INITIAL_CAPACITY];
+    private float[] ys = new float[INITIAL_CAPACITY];
+    private int count = 0;
+    private long startTime = -1;
+    private int viewWidth;
+    private int viewHeight;
+    private int maxEvents;
+
+    /**
+     * Creates a TouchTraceRecorder which keeps up to 100000 events.
+     */
+    public TouchTraceRecorder() {
+        this(100000);
+    }
+
+    /**
+     * Creates a TouchTraceRecorder.
+     *
+     * @param maxEvents Maximum number of events. Later events are ignored.
+     */
+    public TouchTraceRecorder(int maxEvents) {
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Returns the number of recorded events.
+     *
+     * @return The number of events
+     */
+    public int getEventCount() {
+        return count;
+    }
+
+    /**
+     * Discards the recorded events.
+     */
+    public void clear() {
+        count = 0;
+        startTime = -1;
+    }
+
+    /**
+     * Writes the recorded events to the file.
+     *
+     * @param file The file
+     * @throws IOException If the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(viewWidth);
+            out.writeInt(viewHeight);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeByte(actions[i]);
+                out.writeInt(times[i]);
+                out.writeFloat(xs[i]);
+                out.writeFloat(ys[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Adds the event. PigeonholeView calls this for each event passed to
+     * dispatchTouchEvent().
+     *
+     * @param ev         The event
+     * @param viewWidth  Width of the view
+     * @param viewHeight Height of the view
+     */
+    void record(MotionEvent ev, int viewWidth, int viewHeight) {
+        int action = MotionEventCompat.getActionMasked(ev);
+        if (action != MotionEvent.ACTION_DOWN && action != MotionEvent.ACTION_MOVE
+                && action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL) {
+            return; // secondary pointers are not recorded
+        }
+        if (count >= maxEvents) {
+            return;
+        }
+        if (startTime < 0) {
+            startTime = ev.getEventTime();
+        }
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        if (action == MotionEvent.ACTION_MOVE) {
+            // Keep the samples batched into the event as separate moves.
+            // The accessors without a pointer index read the first pointer on every API level.
+            for (int h = 0, l = ev.getHistorySize(); h < l; h++) {
+                add(action, ev.getHistoricalEventTime(h), ev.getHistoricalX(h), ev.getHistoricalY(h));
+            }
+        }
+        add(action, ev.getEventTime(), ev.getX(), ev.getY());
+    }
+
+    private void add(int action, long time, float x, float y) {
+        if (count >= maxEvents) {
+            return;
+        }
+        if (count == actions.length) {
+            // Arrays.copyOf() is not available before API level 9
+            int capacity = Math.min(count * 2, maxEvents);
+            byte[] newActions = new byte[capacity];
+            int[] newTimes = new int[capacity];
+            float[] newXs = new float[capacity];
+            float[] newYs = new float[capacity];
+            System.arraycopy(actions, 0, newActions, 0, count);
+            System.arraycopy(times, 0, newTimes, 0, count);
+            System.arraycopy(xs, 0, newXs, 0, count);
+            System.arraycopy(ys, 0, newYs, 0, count);
+            actions = newActions;
+            times = newTimes;
+            xs = newXs;
+            ys = newYs;
+        }
+        actions[count] = (byte) action;
+        times[count] = (int) (time - startTime);
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+}
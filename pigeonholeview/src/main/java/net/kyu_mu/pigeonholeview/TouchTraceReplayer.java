@@ -0,0 +1,267 @@
+package net.kyu_mu.pigeonholeview;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Replays a trace saved by TouchTraceRecorder against a PigeonholeView
+ * with the original timing, and measures how long the view takes to
+ * handle each event, how many objects are allocated, and how many
+ * animations are started. Run it from an instrumentation test or a debug
+ * screen with the same items as in the field to turn the trace into a
+ * repeatable benchmark. Coordinates are scaled to the size of the view.
+ *
+ * Copyright (C) 2015 Nao Iizuka
+ */
+public class TouchTraceReplayer {
+    public static final String TAG = TouchTraceReplayer.class.getSimpleName();
+
+    private byte[] actions;
+    private int[] times;
+    private float[] xs;
+    private float[] ys;
+    private int recordedWidth;
+    private int recordedHeight;
+    private Handler handler = new Handler(Looper.getMainLooper());
+    private boolean isReplaying = false;
+
+    /**
+     * Called on the main thread when the replay is finished.
+     */
+    public interface OnReplayFinishedListener {
+        void onReplayFinished(Report report);
+    }
+
+    /**
+     * Measurements of a replay.
+     */
+    public static class Report {
+        private final int[] actions;
+        private final long[] handlerNanos;
+        private final int[] allocations;
+        private final int[] animations;
+
+        private Report(int count) {
+            actions = new int[count];
+            handlerNanos = new long[count];
+            allocations = new int[count];
+            animations = new int[count];
+        }
+
+        public int getEventCount() {
+            return actions.length;
+        }
+
+        public int getAction(int index) {
+            return actions[index];
+        }
+
+        /**
+         * Returns the time spent in dispatchTouchEvent() for the event.
+         *
+         * @param index Index of the event
+         * @return Nanoseconds
+         */
+        public long getHandlerNanos(int index) {
+            return handlerNanos[index];
+        }
+
+        /**
+         * Returns the number of objects allocated by all threads while the
+         * event was handled. This is 0 unless allocation counting is
+         * supported by the runtime.
+         *
+         * @param index Index of the event
+         * @return The number of allocations
+         */
+        public int getAllocations(int index) {
+            return allocations[index];
+        }
+
+        /**
+         * Returns the number of animations started while the event was handled.
+         *
+         * @param index Index of the event
+         * @return The number of animations
+         */
+        public int getAnimations(int index) {
+            return animations[index];
+        }
+
+        @Override
+        public String toString() {
+            int count = actions.length;
+            if (count == 0) {
+                return "no events";
+            }
+            long[] sorted = new long[count];
+            System.arraycopy(handlerNanos, 0, sorted, 0, count);
+            Arrays.sort(sorted);
+            long total = 0;
+            int totalAllocations = 0;
+            int totalAnimations = 0;
+            for (int i = 0; i < count; i++) {
+                total += handlerNanos[i];
+                totalAllocations += allocations[i];
+                totalAnimations += animations[i];
+            }
+            return count + " events: mean " + (total / count / 1000) + "us"
+                    + ", p50 " + (sorted[count / 2] / 1000) + "us"
+                    + ", p99 " + (sorted[Math.min(count - 1, count * 99 / 100)] / 1000) + "us"
+                    + ", max " + (sorted[count - 1] / 1000) + "us"
+                    + ", allocations " + totalAllocations
+                    + ", animations " + totalAnimations;
+        }
+    }
+
+    /**
+     * Reads the trace from the file.
+     *
+     * @param file File written by TouchTraceRecorder.save()
+     * @throws IOException If the file cannot be read or has an unknown format
+     */
+    public TouchTraceReplayer(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    /**
+     * Reads the trace from the stream, e.g. a trace bundled in the assets of
+     * a test. The stream is closed.
+     *
+     * @param stream Stream of the data written by TouchTraceRecorder.save()
+     * @throws IOException If the stream cannot be read or has an unknown format
+     */
+    public TouchTraceReplayer(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        try {
+            if (in.readInt() != TouchTraceRecorder.MAGIC || in.readInt() != TouchTraceRecorder.VERSION) {
+                throw new IOException("Unknown trace format");
+            }
+            recordedWidth = in.readInt();
+            recordedHeight = in.readInt();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Invalid event count: " + count);
+            }
+            actions = new byte[count];
+            times = new int[count];
+            xs = new float[count];
+            ys = new float[count];
+            for (int i = 0; i < count; i++) {
+                actions[i] = in.readByte();
+                times[i] = in.readInt();
+                xs[i] = in.readFloat();
+                ys[i] = in.readFloat();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    public int getEventCount() {
+        return actions.length;
+    }
+
+    /**
+     * Starts replaying the trace on the main thread. Each event is
+     * dispatched at the same time offset as it was recorded, so that long
+     * clicks and animations behave as they did in the field.
+     *
+     * @param view     The view that receives the events. It must be laid out.
+     * @param listener Listener which receives the report
+     */
+    public void replay(final PigeonholeView<?> view, final OnReplayFinishedListener listener) {
+        if (isReplaying) {
+            throw new IllegalStateException("Already replaying");
+        }
+        isReplaying = true;
+        final int count = actions.length;
+        final Report report = new Report(count);
+        final float scaleX = recordedWidth > 0 ? (float) view.getWidth() / recordedWidth : 1;
+        final float scaleY = recordedHeight > 0 ? (float) view.getHeight() / recordedHeight : 1;
+        final long startTime = SystemClock.uptimeMillis();
+        final long[] downTimes = new long[count]; // ACTION_DOWN time of the gesture for each event
+        long downTime = startTime;
+        for (int i = 0; i < count; i++) {
+            if (actions[i] == MotionEvent.ACTION_DOWN) {
+                downTime = startTime + times[i];
+            }
+            downTimes[i] = downTime;
+        }
+        startAllocCounting();
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            handler.postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    int action = actions[index];
+                    long eventTime = startTime + times[index];
+                    MotionEvent ev = MotionEvent.obtain(downTimes[index], eventTime, action,
+                            xs[index] * scaleX, ys[index] * scaleY, 0);
+
+                    int animationsBefore = view.getStartedAnimatorCount();
+                    int allocationsBefore = getGlobalAllocCount();
+                    long start = System.nanoTime();
+                    view.dispatchTouchEvent(ev);
+                    report.handlerNanos[index] = System.nanoTime() - start;
+                    report.allocations[index] = getGlobalAllocCount() - allocationsBefore;
+                    report.animations[index] = view.getStartedAnimatorCount() - animationsBefore;
+                    report.actions[index] = action;
+                    ev.recycle();
+
+                    if (index == count - 1) {
+                        stopAllocCounting();
+                        isReplaying = false;
+                        listener.onReplayFinished(report);
+                    }
+                }
+            }, startTime + times[i]);
+        }
+        if (count == 0) {
+            stopAllocCounting();
+            isReplaying = false;
+            listener.onReplayFinished(report);
+        }
+    }
+
+    /**
+     * Resets and starts the global allocation counter. The counters of Debug
+     * are deprecated since API level 23 without a replacement, but they still
+     * count on the runtimes which support them.
+     */
+    @SuppressWarnings("deprecation")
+    private static void startAllocCounting() {
+        Debug.resetGlobalAllocCount();
+        Debug.startAllocCounting();
+    }
+
+    /**
+     * Returns the number of objects allocated since startAllocCounting().
+     *
+     * @return The number of allocations
+     */
+    @SuppressWarnings("deprecation")
+    private static int getGlobalAllocCount() {
+        return Debug.getGlobalAllocCount();
+    }
+
+    /**
+     * Stops the global allocation counter.
+     */
+    @SuppressWarnings("deprecation")
+    private static void stopAllocCounting() {
+        Debug.stopAllocCounting();
+    }
+}